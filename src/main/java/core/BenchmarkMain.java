@@ -0,0 +1,455 @@
+package core;
+
+import domain.Book;
+import domain.BookField;
+import domain.SearchIndexData;
+import domain.SearchResult;
+import features.recommendation.Graph;
+import features.recommendation.PersonalizedPageRank;
+import features.search.ParallelIndexBuilder;
+import features.search.QueryProcessor;
+import features.search.ReRanker;
+import features.search.SegmentedIndex;
+import features.search.Similarity;
+import features.search.Suggester;
+import storage.BinaryIndexWriter;
+import storage.BookLoader;
+import storage.MappedIndex;
+import utils.EditDistance;
+import utils.StemCache;
+import utils.StopWordLoader;
+import utils.TextProcessor;
+import utils.TfIdfCalculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offline micro-benchmarks for the search core. Nothing here is used by the app.
+ *
+ * Usage: BenchmarkMain [--mode=topk|analyzer|stress|pagerank|editdistance] [--scale=N] [--k=10] [--rounds=20] [--similarity=cosine] [--threads=N]
+ *   --mode    topk: exhaustive vs. WAND search; analyzer: TextProcessor with and without the stem cache;
+ *             stress: many threads sharing one engine must get the single-threaded answers;
+ *             pagerank: latency of personalized PageRank recommendations, serial vs. parallel;
+ *             editdistance: the suggester's distance kernel vs. the full DP matrix
+ *   --scale   the bundled catalog is repeated N times (with fresh ids) so the numbers
+ *             are not dominated by a 200-book index
+ */
+public class BenchmarkMain {
+
+    private static final String BOOK_RES = "/data/book.json";
+    private static final String STOPWORD_RES = "/data/stopword.txt";
+
+    // A mix of rare, common and multi-term queries; "programming" matches most of the catalog
+    private static final String[] QUERIES = {
+            "programming", "python", "java programming", "machine learning", "data structures and algorithms",
+            "clean code", "learn programming language", "web development javascript", "design patterns",
+            "computer science book", "rust", "database systems", "introduction to programming with python"
+    };
+
+    // Misspelled queries for the "did you mean" suggester
+    private static final String[] TYPOS = {
+            "pyhton programing", "machin lerning", "javscript", "clean cod", "desing paterns", "algoritms"
+    };
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = Arrays.asList(args);
+        String mode = optionValue(options, "--mode=", "topk");
+        int scale = Integer.parseInt(optionValue(options, "--scale=", "20"));
+        int rounds = Integer.parseInt(optionValue(options, "--rounds=", "20"));
+
+        Set<String> stopWords = StopWordLoader.loadStopWords(STOPWORD_RES);
+        List<Book> catalog = new BookLoader(BOOK_RES).loadBooksFromSource(BOOK_RES);
+        List<Book> books = scaledCatalog(catalog, scale);
+
+        switch (mode) {
+            case "topk":
+                int k = Integer.parseInt(optionValue(options, "--k=", "10"));
+                Similarity similarity = Similarity.byName(optionValue(options, "--similarity=", "cosine"));
+                benchmarkTopK(buildIndex(books, stopWords), stopWords, similarity, k, rounds);
+                break;
+            case "analyzer":
+                benchmarkAnalyzer(books, stopWords, rounds);
+                break;
+            case "stress":
+                int threads = Integer.parseInt(optionValue(options, "--threads=",
+                        String.valueOf(Math.max(4, Runtime.getRuntime().availableProcessors() * 2))));
+                stressTest(books, catalog, stopWords, threads, rounds);
+                break;
+            case "pagerank":
+                benchmarkPageRank(books, rounds);
+                break;
+            case "editdistance":
+                benchmarkEditDistance(books, stopWords, rounds);
+                break;
+            default:
+                System.err.println("❌ Unknown benchmark mode: " + mode);
+        }
+    }
+
+    /**
+     * Exhaustive scoring + full sort vs. WAND top-k on the same snapshot. Also checks
+     * that both return the same k scores, so a speedup never hides a wrong answer.
+     */
+    private static void benchmarkTopK(MappedIndex index, Set<String> stopWords, Similarity similarity,
+                                      int k, int rounds) {
+        QueryProcessor queryProcessor = new QueryProcessor(new TextProcessor(stopWords), SegmentedIndex.of(index), similarity);
+        System.out.println("Benchmarking top-" + k + " (" + index.getDocCount() + " docs, " + rounds + " rounds)...");
+
+        System.out.printf("   %-42s %8s %14s %12s %9s%n", "query", "matches", "exhaustive µs", "top-k µs", "speedup");
+        long exhaustiveTotal = 0, topKTotal = 0;
+        int mismatches = 0;
+        for (String query : QUERIES) {
+            List<SearchResult> all = queryProcessor.search(query);
+            List<SearchResult> top = queryProcessor.search(query, k);
+            if (!sameScores(all.subList(0, Math.min(k, all.size())), top)) mismatches++;
+
+            long exhaustive = bestOf(rounds, () -> {
+                List<SearchResult> results = queryProcessor.search(query);
+                return results.subList(0, Math.min(k, results.size()));
+            });
+            long topK = bestOf(rounds, () -> queryProcessor.search(query, k));
+            exhaustiveTotal += exhaustive;
+            topKTotal += topK;
+            System.out.printf("   %-42s %8d %14.1f %12.1f %8.2fx%n", query, all.size(),
+                    exhaustive / 1e3, topK / 1e3, (double) exhaustive / topK);
+        }
+        System.out.printf("   %-42s %8s %14.1f %12.1f %8.2fx%n", "total", "",
+                exhaustiveTotal / 1e3, topKTotal / 1e3, (double) exhaustiveTotal / topKTotal);
+        System.out.println(mismatches == 0
+                ? "✅ Top-k results identical to the exhaustive ranking."
+                : "❌ " + mismatches + " queries returned a different top-" + k + "!");
+    }
+
+    /**
+     * Tokenizes every field of every book, once always running the stemmer and once
+     * through a fresh StemCache, and checks that both produce the same terms.
+     */
+    private static void benchmarkAnalyzer(List<Book> books, Set<String> stopWords, int rounds) {
+        List<String> texts = new ArrayList<>();
+        for (Book book : books) {
+            for (BookField field : BookField.values()) {
+                String text = field.textOf(book);
+                if (text != null) texts.add(text);
+            }
+        }
+        System.out.println("Benchmarking the analyzer (" + texts.size() + " field texts, " + rounds + " rounds)...");
+
+        TextProcessor uncached = new TextProcessor(stopWords, null);
+        StemCache stemCache = new StemCache(StemCache.DEFAULT_CAPACITY);
+        TextProcessor cached = new TextProcessor(stopWords, stemCache);
+
+        long[] terms = new long[1];
+        long plain = bestOf(rounds, () -> {
+            terms[0] = 0;
+            for (String text : texts) uncached.forEachTerm(text, term -> terms[0]++);
+            return terms[0];
+        });
+        stemCache.resetStats();
+        long withCache = bestOf(rounds, () -> {
+            for (String text : texts) cached.forEachTerm(text, term -> { });
+            return null;
+        });
+
+        int mismatches = 0;
+        for (String text : texts) {
+            if (!uncached.process(text).equals(cached.process(text))) mismatches++;
+        }
+        System.out.printf("   %-20s %10.2f ms  (%d terms)%n", "stemmer every time", plain / 1e6, terms[0]);
+        System.out.printf("   %-20s %10.2f ms  %.2fx%n", "stem cache", withCache / 1e6, (double) plain / withCache);
+        System.out.println("   🌱 " + stemCache);
+        System.out.println(mismatches == 0
+                ? "✅ Cached and uncached terms identical."
+                : "❌ " + mismatches + " texts analyzed differently!");
+    }
+
+    /**
+     * One QueryProcessor, ReRanker, Suggester, Graph and TextProcessor shared by many
+     * threads that all start at the same moment and run every query 'rounds' times.
+     * Each answer must be exactly the one computed single-threaded beforehand; any
+     * difference or exception means shared mutable state somewhere.
+     */
+    private static void stressTest(List<Book> books, List<Book> catalog, Set<String> stopWords,
+                                   int threads, int rounds) throws InterruptedException {
+        TextProcessor textProcessor = new TextProcessor(stopWords);
+        QueryProcessor queryProcessor = new QueryProcessor(textProcessor, SegmentedIndex.of(buildIndex(books, stopWords)));
+        Map<Integer, Book> bookMap = new HashMap<>();
+        for (Book book : books) bookMap.put(book.getBookId(), book);
+        ReRanker reRanker = new ReRanker(bookMap, "benchmark-popularity.json");
+
+        // Graph and suggester scan the whole catalog per build / call, so they get the unscaled one
+        Graph graph = new Graph();
+        graph.buildGraph(catalog);
+        List<String> titles = new ArrayList<>();
+        for (Book book : catalog) if (book.getTitle() != null) titles.add(book.getTitle());
+        Suggester suggester = new Suggester(titles, stopWords);
+
+        String[] expected = new String[QUERIES.length];
+        for (int q = 0; q < QUERIES.length; q++) {
+            expected[q] = answer(q, textProcessor, queryProcessor, reRanker, suggester, graph, catalog);
+        }
+        System.out.println("Stress testing " + threads + " threads x " + rounds + " rounds x "
+                + QUERIES.length + " queries (" + books.size() + " docs)...");
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger mismatches = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            int offset = t; // every thread walks the queries in a different order
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < rounds * QUERIES.length; i++) {
+                        int q = (i + offset) % QUERIES.length;
+                        String actual = answer(q, textProcessor, queryProcessor, reRanker, suggester, graph, catalog);
+                        if (!expected[q].equals(actual)) mismatches.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    System.err.println("❌ " + Thread.currentThread().getName() + ": " + e);
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - begin;
+
+        System.out.printf("   %d calls in %.1f ms%n", (long) threads * rounds * QUERIES.length, elapsed / 1e6);
+        System.out.println(mismatches.get() == 0 && failures.get() == 0
+                ? "✅ All concurrent answers identical to the single-threaded ones."
+                : "❌ " + mismatches.get() + " wrong answers, " + failures.get() + " threads failed!");
+    }
+
+    // Everything the engine says about query q, as one comparable string
+    private static String answer(int q, TextProcessor textProcessor, QueryProcessor queryProcessor, ReRanker reRanker,
+                                 Suggester suggester, Graph graph, List<Book> catalog) {
+        String query = QUERIES[q];
+        StringBuilder sb = new StringBuilder();
+        sb.append(textProcessor.process(query)).append('|');
+        List<SearchResult> all = queryProcessor.search(query);
+        for (SearchResult result : all) sb.append(result.getDocId()).append(':').append(result.getScore()).append(',');
+        sb.append('|');
+        for (SearchResult result : queryProcessor.search(query, 10)) sb.append(result.getDocId()).append(',');
+        sb.append('|');
+        for (SearchResult result : reRanker.reRank(all)) sb.append(result.getDocId()).append(',');
+        sb.append('|').append(suggester.suggestSimilar(TYPOS[q % TYPOS.length]));
+        sb.append('|').append(graph.recommendPopularBooks(catalog.get(q * 7 % catalog.size()).getBookId(), 5, reRanker.getPopularityMap()));
+        return sb.toString();
+    }
+
+    /**
+     * Personalized PageRank per request, from one book and from a session of five, with the
+     * power iteration on one thread and on the common pool; both must recommend the same
+     * books. Also times precomputing the most viewed books and the direct-neighbor mode.
+     */
+    private static void benchmarkPageRank(List<Book> books, int rounds) {
+        long start = System.nanoTime();
+        Graph graph = new Graph();
+        graph.buildGraph(books);
+        System.out.printf("Benchmarking personalized PageRank (%d books, %,d edges, graph built in %.0f ms, %d rounds)...%n",
+                graph.size(), graph.edgeCount(), (System.nanoTime() - start) / 1e6, rounds);
+
+        PersonalizedPageRank serial = new PersonalizedPageRank(graph, null);
+        PersonalizedPageRank parallel = new PersonalizedPageRank(graph, ForkJoinPool.commonPool());
+        List<Integer> seeds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) seeds.add(books.get(i * books.size() / 20).getBookId());
+        List<List<Integer>> sessions = new ArrayList<>();
+        for (int i = 0; i + 5 <= seeds.size(); i += 5) sessions.add(seeds.subList(i, i + 5));
+
+        int mismatches = 0;
+        for (int seed : seeds) {
+            if (!serial.recommend(seed, 10).equals(parallel.recommend(seed, 10))) mismatches++;
+        }
+        for (List<Integer> session : sessions) {
+            if (!serial.recommend(session, 10).equals(parallel.recommend(session, 10))) mismatches++;
+        }
+
+        long oneSerial = bestOf(rounds, () -> { for (int seed : seeds) serial.recommend(seed, 10); return null; }) / seeds.size();
+        long oneParallel = bestOf(rounds, () -> { for (int seed : seeds) parallel.recommend(seed, 10); return null; }) / seeds.size();
+        long sessionSerial = bestOf(rounds, () -> { for (List<Integer> s : sessions) serial.recommend(s, 10); return null; }) / sessions.size();
+        long sessionParallel = bestOf(rounds, () -> { for (List<Integer> s : sessions) parallel.recommend(s, 10); return null; }) / sessions.size();
+        long neighbors = bestOf(rounds, () -> { for (int seed : seeds) graph.recommendPopularBooks(seed, 10, null); return null; }) / seeds.size();
+
+        start = System.nanoTime();
+        parallel.precompute(seeds, 10);
+        long precompute = System.nanoTime() - start;
+        long precomputed = bestOf(rounds, () -> { for (int seed : seeds) parallel.recommend(seed, 10); return null; }) / seeds.size();
+
+        System.out.printf("   %-24s %12s %12s %9s%n", "request", "serial µs", "parallel µs", "speedup");
+        System.out.printf("   %-24s %12.1f %12.1f %8.2fx%n", "one book", oneSerial / 1e3, oneParallel / 1e3, (double) oneSerial / oneParallel);
+        System.out.printf("   %-24s %12.1f %12.1f %8.2fx%n", "session of 5 books", sessionSerial / 1e3, sessionParallel / 1e3,
+                (double) sessionSerial / sessionParallel);
+        System.out.printf("   %-24s %12.1f µs%n", "precomputed lookup", precomputed / 1e3);
+        System.out.printf("   %-24s %12.1f µs%n", "direct neighbors", neighbors / 1e3);
+        System.out.printf("   precomputing %d books took %.1f ms (%d threads)%n", seeds.size(), precompute / 1e6,
+                ForkJoinPool.commonPool().getParallelism());
+        System.out.println(mismatches == 0
+                ? "✅ Serial and parallel iterations recommend the same books."
+                : "❌ " + mismatches + " requests differ between serial and parallel!");
+    }
+
+    /**
+     * The comparisons a "did you mean" lookup makes (every misspelled query word against
+     * every title word, every query against every title) with a full DP matrix per pair,
+     * with {@link EditDistance} and with EditDistance bounded to a few edits; all three
+     * must agree. Also times the suggester on the misspelled queries.
+     */
+    private static void benchmarkEditDistance(List<Book> books, Set<String> stopWords, int rounds) {
+        Set<String> words = new LinkedHashSet<>();
+        List<String> titles = new ArrayList<>();
+        for (Book book : books) {
+            if (book.getTitle() == null) continue;
+            String title = book.getTitle().toLowerCase();
+            titles.add(title);
+            words.addAll(Arrays.asList(title.split("\\s+")));
+        }
+        List<String[]> pairs = new ArrayList<>();
+        for (String query : TYPOS) {
+            for (String queryWord : query.split(" ")) {
+                for (String word : words) pairs.add(new String[]{queryWord, word});
+            }
+            for (String title : titles) pairs.add(new String[]{query, title});
+        }
+        System.out.println("Benchmarking edit distance (" + pairs.size() + " pairs, " + rounds + " rounds)...");
+
+        int bound = 3;
+        EditDistance kernel = new EditDistance();
+        int mismatches = 0;
+        for (String[] pair : pairs) {
+            int expected = matrixDistance(pair[0], pair[1]);
+            if (kernel.distance(pair[0], pair[1]) != expected) mismatches++;
+            if (kernel.distance(pair[0], pair[1], bound) != Math.min(expected, bound + 1)) mismatches++;
+        }
+
+        long[] sum = new long[1];
+        long matrix = bestOf(rounds, () -> {
+            sum[0] = 0;
+            for (String[] pair : pairs) sum[0] += matrixDistance(pair[0], pair[1]);
+            return sum[0];
+        });
+        long exact = bestOf(rounds, () -> {
+            for (String[] pair : pairs) sum[0] += kernel.distance(pair[0], pair[1]);
+            return sum[0];
+        });
+        long bounded = bestOf(rounds, () -> {
+            for (String[] pair : pairs) sum[0] += kernel.distance(pair[0], pair[1], bound);
+            return sum[0];
+        });
+        Suggester suggester = new Suggester(titles, stopWords);
+        long suggest = bestOf(rounds, () -> {
+            for (String query : TYPOS) suggester.suggestSimilar(query);
+            return null;
+        }) / TYPOS.length;
+
+        System.out.printf("   %-24s %10.2f ms%n", "DP matrix per pair", matrix / 1e6);
+        System.out.printf("   %-24s %10.2f ms  %.2fx%n", "bit-parallel", exact / 1e6, (double) matrix / exact);
+        System.out.printf("   %-24s %10.2f ms  %.2fx%n", "bounded to " + bound + " edits", bounded / 1e6, (double) matrix / bounded);
+        System.out.printf("   %-24s %10.1f µs per query%n", "suggester", suggest / 1e3);
+        System.out.println(mismatches == 0
+                ? "✅ Kernel and DP matrix distances identical."
+                : "❌ " + mismatches + " distances differ from the DP matrix!");
+    }
+
+    // The textbook O(m * n) table, as the suggester computed it before EditDistance
+    private static int matrixDistance(String s1, String s2) {
+        int m = s1.length(), n = s2.length();
+        int[][] dp = new int[m + 1][n + 1];
+        for (int i = 0; i <= m; i++) dp[i][0] = i;
+        for (int j = 0; j <= n; j++) dp[0][j] = j;
+        for (int i = 1; i <= m; i++) {
+            for (int j = 1; j <= n; j++) {
+                int cost = s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1;
+                dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+            }
+        }
+        return dp[m][n];
+    }
+
+    // --- Helpers ---
+
+    /**
+     * The catalog repeated 'scale' times. Copies mix the fields of different books
+     * (title of one, description of another, ...) so they are not exact duplicates:
+     * identical documents would tie and make every benchmark unrealistically easy or hard.
+     */
+    private static List<Book> scaledCatalog(List<Book> books, int scale) {
+        int n = books.size();
+        int maxId = 0;
+        for (Book book : books) maxId = Math.max(maxId, book.getBookId());
+
+        List<Book> scaled = new ArrayList<>(n * scale);
+        for (int copy = 0; copy < scale; copy++) {
+            for (int i = 0; i < n; i++) {
+                Book book = books.get(i);
+                Book other = books.get((i + copy * 7) % n);
+                Book third = books.get((i + copy * 13) % n);
+                scaled.add(new Book(book.getBookId() + copy * (maxId + 1), book.getTitle(), other.getAuthor(),
+                        other.getDescription(), third.getProgLang(), book.getCategory(), third.getTag(),
+                        book.getRating(), book.getCoverUrl(), book.getDownLink()));
+            }
+        }
+        return scaled;
+    }
+
+    private static MappedIndex buildIndex(List<Book> books, Set<String> stopWords) {
+        return MappedIndex.wrap(indexBytes(books, stopWords));
+    }
+
+    // The index file IndexerMain would write for these books
+    static byte[] indexBytes(List<Book> books, Set<String> stopWords) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            ParallelIndexBuilder indexer = new ParallelIndexBuilder(stopWords, pool);
+            var invertedIndex = indexer.build(books);
+            TfIdfCalculator calculator = new TfIdfCalculator();
+            calculator.calculateIdfParallel(invertedIndex, books.size(), pool);
+            calculator.calculateTfIdfParallel(invertedIndex, pool);
+            SearchIndexData data = new SearchIndexData(invertedIndex, calculator.getDictionary(),
+                    calculator.getDocVectors(), calculator.getIdfScores(), indexer.getFieldLengths());
+            return new BinaryIndexWriter().toBytes(data, books.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Best wall time of one call over the given rounds, after a warm-up of the same length
+    private static long bestOf(int rounds, java.util.function.Supplier<?> task) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < rounds * 2; round++) {
+            long start = System.nanoTime();
+            task.get();
+            long elapsed = System.nanoTime() - start;
+            if (round >= rounds) best = Math.min(best, elapsed);
+        }
+        return best;
+    }
+
+    private static boolean sameScores(List<SearchResult> expected, List<SearchResult> actual) {
+        if (expected.size() != actual.size()) return false;
+        for (int i = 0; i < expected.size(); i++) {
+            if (Math.abs(expected.get(i).getScore() - actual.get(i).getScore()) > 1e-5) return false;
+        }
+        return true;
+    }
+
+    private static String optionValue(List<String> options, String prefix, String fallback) {
+        for (String option : options) {
+            if (option.startsWith(prefix)) return option.substring(prefix.length());
+        }
+        return fallback;
+    }
+}
@@ -2,10 +2,6 @@ package core;
 
 import domain.Book;
 import domain.SearchResult;
-import features.recommendation.Graph;
-import features.search.QueryProcessor;
-import features.search.ReRanker;
-import features.search.Suggester;
 import utils.LoggingService;
 import ui.cli.CliView;
 import utils.BookFilter;
@@ -16,26 +12,19 @@ import java.util.stream.Collectors;
 
 public class BookSearchEngine {
 
-    private final Map<Integer, Book> bookMap;
-    private final QueryProcessor queryProcessor;
-    private final ReRanker reRanker;
-    private final Suggester suggester;
-    private final Graph graph;
+    private final EngineHolder engines;
     private final LoggingService loggingService;
     private final CliView view;
 
+    // The engine version the current query runs on, taken once per query
+    private EngineSnapshot engine;
+
     private final Map<String, Object> currentFilters;
     private String currentSortMode;
     private boolean isSortAscending;
 
-    public BookSearchEngine(Map<Integer, Book> bookMap, QueryProcessor queryProcessor,
-                            ReRanker reRanker, Suggester suggester, Graph graph,
-                            LoggingService loggingService, CliView view) {
-        this.bookMap = bookMap;
-        this.queryProcessor = queryProcessor;
-        this.reRanker = reRanker;
-        this.suggester = suggester;
-        this.graph = graph;
+    public BookSearchEngine(EngineHolder engines, LoggingService loggingService, CliView view) {
+        this.engines = engines;
         this.loggingService = loggingService;
         this.view = view;
 
@@ -46,7 +35,7 @@ public class BookSearchEngine {
     }
 
     public void run() {
-        view.showWelcomeMessage(bookMap.size());
+        view.showWelcomeMessage(engines.current().getBookMap().size());
         while (true) {
             String query = view.getSearchQuery();
             if (query.equalsIgnoreCase("exit")) {
@@ -60,16 +49,17 @@ public class BookSearchEngine {
     }
 
     private void processQuery(String query) {
-        List<SearchResult> tfIdfResults = queryProcessor.search(query);
+        engine = engines.current();
+        List<SearchResult> tfIdfResults = engine.getQueryProcessor().search(query);
         if (tfIdfResults.isEmpty()) {
             handleNoResults(query);
             return;
         }
 
-        List<SearchResult> rankedResults = reRanker.reRank(tfIdfResults, query);
+        List<SearchResult> rankedResults = engine.getReRanker().reRank(tfIdfResults);
 
         final List<Book> initialBooks = rankedResults.stream()
-                .map(r -> bookMap.get(r.getDocId()))
+                .map(r -> engine.getBookMap().get(r.getDocId()))
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
 
@@ -154,8 +144,12 @@ public class BookSearchEngine {
             view.showMessage("No results to base recommendations on.");
             return;
         }
-        List<String> related = graph.recommendPopularBooks(books.get(0).getTitle(), 5,
-                reRanker.getPopularityMap());
+        List<String> related = new ArrayList<>();
+        for (int id : engine.getGraph().recommendPopularBooks(books.get(0).getBookId(), 5,
+                engine.getReRanker().getPopularityMap())) {
+            Book book = engine.getBookMap().get(id);
+            if (book != null) related.add(book.getTitle());
+        }
         view.showRelated(related);
     }
 
@@ -164,22 +158,22 @@ private void handleNoResults(String query) {
 
     view.showResults(query, new ArrayList<>());
 
-    String suggestion = suggester.suggestSimilar(query);
+    String suggestion = engine.getSuggester().suggestSimilar(query);
 
     if (suggestion != null) {
 
         view.showSuggestion(suggestion);
 
-        List<SearchResult> suggestedResults = queryProcessor.search(suggestion);
+        List<SearchResult> suggestedResults = engine.getQueryProcessor().search(suggestion);
 
         if (!suggestedResults.isEmpty()) {
 
             view.showMessage("ℹ️ Showing results for the suggestion \"" + suggestion + "\" instead.");
 
-            List<SearchResult> rerankedResults = reRanker.reRank(suggestedResults, suggestion);
+            List<SearchResult> rerankedResults = engine.getReRanker().reRank(suggestedResults);
 
             List<Book> booksToDisplay = rerankedResults.stream()
-                    .map(r -> bookMap.get(r.getDocId()))
+                    .map(r -> engine.getBookMap().get(r.getDocId()))
                     .filter(Objects::nonNull)
                     .collect(Collectors.toList());
 
@@ -0,0 +1,74 @@
+package core;
+
+import features.search.Similarity;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The live {@link EngineSnapshot}, replaceable while the app runs.
+ *
+ * A reload builds a complete new snapshot on a background thread while the old
+ * one keeps serving, then publishes it with a single atomic swap. Requests that
+ * already took the old snapshot finish on it; the next ones see the new data.
+ */
+public class EngineHolder {
+
+    private final Set<String> stopWords;
+    private final Similarity similarity;
+    private final AtomicReference<EngineSnapshot> current;
+    private final ExecutorService reloader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "devshelf-engine-reload");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Loads the first snapshot right away.
+     */
+    public EngineHolder(Set<String> stopWords, Similarity similarity) {
+        this(stopWords, similarity, EngineSnapshot.load(1, stopWords, similarity));
+    }
+
+    private EngineHolder(Set<String> stopWords, Similarity similarity, EngineSnapshot first) {
+        this.stopWords = stopWords;
+        this.similarity = similarity;
+        this.current = new AtomicReference<>(first);
+    }
+
+    /**
+     * Loads the first snapshot in the background; completes as soon as it can search.
+     */
+    public static CompletableFuture<EngineHolder> startAsync(Set<String> stopWords, Similarity similarity) {
+        return EngineSnapshot.loadAsync(1, stopWords, similarity)
+                .thenApply(first -> new EngineHolder(stopWords, similarity, first));
+    }
+
+    public EngineSnapshot current() {
+        return current.get();
+    }
+
+    /**
+     * Rebuilds the engine from the data on disk in the background and swaps it in.
+     * Reloads run one at a time, in the order they were requested.
+     */
+    public CompletableFuture<EngineSnapshot> reloadAsync() {
+        return CompletableFuture.supplyAsync(this::reload, reloader).whenComplete((engine, error) -> {
+            if (error != null) System.err.println("⚠️ Engine reload failed, keeping the current data: " + error);
+        });
+    }
+
+    private EngineSnapshot reload() {
+        long start = System.nanoTime();
+        EngineSnapshot previous = current.get();
+        EngineSnapshot next = EngineSnapshot.load(previous.getGeneration() + 1, stopWords, similarity);
+        current.set(next);
+        previous.close();
+        System.out.printf("🔁 Engine swapped to generation %d (%d books) in %.0f ms.%n",
+                next.getGeneration(), next.getBookMap().size(), (System.nanoTime() - start) / 1e6);
+        return next;
+    }
+}
@@ -0,0 +1,255 @@
+package core;
+
+import domain.Book;
+import features.recommendation.Graph;
+import features.recommendation.GraphStore;
+import features.recommendation.PersonalizedPageRank;
+import features.search.PhraseCompletion;
+import features.search.QueryProcessor;
+import features.search.ReRanker;
+import features.search.SegmentedIndex;
+import features.search.Similarity;
+import features.search.Suggester;
+import lombok.Getter;
+import storage.BookLoader;
+import storage.IndexLoader;
+import storage.MappedIndex;
+import utils.StorageUtils;
+import utils.TextProcessor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * One complete, immutable version of the engine: the books and everything built
+ * from them (index, ranking, suggestions, recommendations, autocomplete).
+ *
+ * Components of one snapshot always belong together, so a caller that takes a
+ * snapshot once per request never mixes e.g. new search hits with an old book map.
+ * {@link EngineHolder} swaps whole snapshots when the data on disk changes.
+ *
+ * Loading runs as a graph of stages on a small pool: the index is opened while the
+ * books are parsed, and everything derived from the books is built side by side.
+ * The snapshot is handed out as soon as search and trending work; the recommendation
+ * graph (and the PageRank over it) and the autocomplete trie keep building and become
+ * available when done.
+ */
+@Getter
+public class EngineSnapshot implements AutoCloseable {
+
+    private static final String BOOKS_RES = "/data/book.json";
+    private static final String INDEX_RES = "/data/index_data.bin";
+    private static final String GRAPH_RES = "/data/graph.bin";
+    private static final int STARTUP_THREADS = 4;
+    // PageRank recommendations of the most viewed books are ready before anyone asks
+    private static final int PRECOMPUTED_BOOKS = 50;
+    private static final int PRECOMPUTED_LIMIT = 10;
+
+    private final long generation;
+    private final Map<Integer, Book> bookMap;
+    private final QueryProcessor queryProcessor;
+    private final ReRanker reRanker;
+    private final Suggester suggester;
+    private final SegmentedIndex index;
+    private final CompletableFuture<Graph> graph;
+    private final CompletableFuture<PersonalizedPageRank> pageRank;
+    private final CompletableFuture<PhraseCompletion> phraseCompletion;
+
+    private EngineSnapshot(long generation, Map<Integer, Book> bookMap, QueryProcessor queryProcessor,
+                           ReRanker reRanker, Suggester suggester, SegmentedIndex index, CompletableFuture<Graph> graph,
+                           CompletableFuture<PersonalizedPageRank> pageRank, CompletableFuture<PhraseCompletion> phraseCompletion) {
+        this.generation = generation;
+        this.bookMap = bookMap;
+        this.queryProcessor = queryProcessor;
+        this.reRanker = reRanker;
+        this.suggester = suggester;
+        this.index = index;
+        this.graph = graph;
+        this.pageRank = pageRank;
+        this.phraseCompletion = phraseCompletion;
+    }
+
+    /**
+     * Builds a snapshot from the current data (AppData updates if present, the bundled
+     * files otherwise). Completes once searching works; see {@link #isGraphReady()} and
+     * {@link #isAutocompleteReady()} for the parts that may still be building.
+     */
+    public static CompletableFuture<EngineSnapshot> loadAsync(long generation, Set<String> stopWords, Similarity similarity) {
+        String appDataPath = StorageUtils.getAppDataDir();
+        String popularityPath = appDataPath + File.separator + "popularity.json";
+        String segmentsPath = appDataPath + File.separator + "segments";
+
+        ExecutorService pool = Executors.newFixedThreadPool(STARTUP_THREADS, r -> {
+            Thread t = new Thread(r, "devshelf-startup");
+            t.setDaemon(true);
+            return t;
+        });
+        StageTimings timings = new StageTimings();
+
+        // 1. Books and index are independent
+        CompletableFuture<List<Book>> books = CompletableFuture.supplyAsync(
+                () -> timings.time("books", () -> new BookLoader(BOOKS_RES).loadBooks()), pool);
+        CompletableFuture<SegmentedIndex> index = CompletableFuture.supplyAsync(() -> timings.time("index", () -> {
+            MappedIndex baseIndex = new IndexLoader(INDEX_RES).loadIndex();
+            return SegmentedIndex.openOrBase(baseIndex, new File(segmentsPath), new TextProcessor(stopWords));
+        }), pool);
+
+        // 2. Everything else only needs the books
+        CompletableFuture<Map<Integer, Book>> bookMap = books.thenApply(EngineSnapshot::toBookMap);
+        CompletableFuture<List<String>> titles = books.thenApply(EngineSnapshot::titlesOf);
+        CompletableFuture<ReRanker> reRanker = bookMap.thenApplyAsync(
+                map -> timings.time("ranking", () -> new ReRanker(map, popularityPath)), pool);
+        CompletableFuture<Suggester> suggester = titles.thenApplyAsync(
+                list -> timings.time("suggester", () -> new Suggester(list, stopWords)), pool);
+        CompletableFuture<PhraseCompletion> phraseCompletion = titles.thenApplyAsync(
+                list -> timings.time("autocomplete", () -> buildPhraseCompletion(list)), pool);
+        CompletableFuture<Graph> graph = books.thenApplyAsync(
+                list -> timings.time("graph", () -> GraphStore.loadOrBuild(list, GRAPH_RES)), pool);
+        CompletableFuture<PersonalizedPageRank> pageRank = graph.thenCombineAsync(reRanker, (g, ranker) ->
+                timings.time("pagerank", () -> {
+                    PersonalizedPageRank ppr = new PersonalizedPageRank(g, ForkJoinPool.commonPool());
+                    ppr.precompute(ranker.getTopTrending(PRECOMPUTED_BOOKS), PRECOMPUTED_LIMIT);
+                    return ppr;
+                }), pool);
+
+        // 3. Report once every stage is done, ready or not
+        CompletableFuture.allOf(index, reRanker, suggester, phraseCompletion, graph, pageRank).whenComplete((ignored, error) -> {
+            pool.shutdown();
+            if (error != null) System.err.println("⚠️ Engine startup stage failed: " + error);
+            System.out.println("⏱️ Engine v" + generation + " startup: " + timings);
+        });
+
+        // 4. Searchable as soon as the core parts are there
+        return CompletableFuture.allOf(index, reRanker, suggester).thenApply(ignored -> {
+            SegmentedIndex segmentedIndex = index.join();
+            QueryProcessor queryProcessor = new QueryProcessor(new TextProcessor(stopWords), segmentedIndex, similarity);
+            return new EngineSnapshot(generation, bookMap.join(), queryProcessor, reRanker.join(),
+                    suggester.join(), segmentedIndex, graph, pageRank, phraseCompletion);
+        });
+    }
+
+    /**
+     * Same as {@link #loadAsync}, waiting until searching works.
+     */
+    public static EngineSnapshot load(long generation, Set<String> stopWords, Similarity similarity) {
+        return loadAsync(generation, stopWords, similarity).join();
+    }
+
+    // --- Parts that finish after the snapshot is published ---
+
+    /**
+     * The recommendation graph, waiting for it if it is still being built.
+     */
+    public Graph getGraph() {
+        return graph.join();
+    }
+
+    public boolean isGraphReady() {
+        return graph.isDone() && !graph.isCompletedExceptionally();
+    }
+
+    public CompletableFuture<Graph> whenGraphReady() {
+        return graph.copy();
+    }
+
+    /**
+     * Personalized PageRank over the graph, waiting for it if it is still being set up.
+     */
+    public PersonalizedPageRank getPageRank() {
+        return pageRank.join();
+    }
+
+    public boolean isPageRankReady() {
+        return pageRank.isDone() && !pageRank.isCompletedExceptionally();
+    }
+
+    /**
+     * The autocomplete trie, waiting for it if it is still being built.
+     */
+    public PhraseCompletion getPhraseCompletion() {
+        return phraseCompletion.join();
+    }
+
+    public boolean isAutocompleteReady() {
+        return phraseCompletion.isDone() && !phraseCompletion.isCompletedExceptionally();
+    }
+
+    public CompletableFuture<PhraseCompletion> whenAutocompleteReady() {
+        return phraseCompletion.copy();
+    }
+
+    // --- Stages ---
+
+    private static Map<Integer, Book> toBookMap(List<Book> books) {
+        Map<Integer, Book> bookMap = new HashMap<>();
+        for (Book b : books) {
+            if (b != null) bookMap.put(b.getBookId(), b);
+        }
+        return Collections.unmodifiableMap(bookMap);
+    }
+
+    private static List<String> titlesOf(List<Book> books) {
+        List<String> titles = new ArrayList<>();
+        for (Book b : books) if (b != null && b.getTitle() != null) titles.add(b.getTitle());
+        return titles;
+    }
+
+    // Every word of every title leads to that title
+    private static PhraseCompletion buildPhraseCompletion(List<String> titles) {
+        PhraseCompletion phraseCompletion = new PhraseCompletion();
+        for (String fullTitle : titles) {
+            for (String word : fullTitle.split("[\\s,]+")) {
+                String cleanWord = word.trim();
+                if (!cleanWord.isEmpty()) {
+                    phraseCompletion.insertWordAndTitle(cleanWord, fullTitle);
+                }
+            }
+        }
+        return phraseCompletion;
+    }
+
+    /**
+     * How long each stage took and when it finished, counted from the start of loading:
+     * with stages running side by side, the finish times show what startup waits for.
+     */
+    private static final class StageTimings {
+        private final long origin = System.nanoTime();
+        private final Map<String, long[]> stages = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        <T> T time(String stage, Supplier<T> work) {
+            long start = System.nanoTime();
+            T result = work.get();
+            long end = System.nanoTime();
+            stages.put(stage, new long[]{end - start, end - origin});
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            synchronized (stages) {
+                stages.forEach((stage, t) -> sb.append(String.format(" %s=%.0fms(done@%.0fms)", stage, t[0] / 1e6, t[1] / 1e6)));
+            }
+            return sb.toString().trim();
+        }
+    }
+
+    /**
+     * Stops the background merger of this snapshot's index. Queries still running on it are not affected.
+     */
+    @Override
+    public void close() {
+        index.close();
+    }
+}
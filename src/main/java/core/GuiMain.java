@@ -1,78 +1,51 @@
 package core;
 
-import domain.Book;
-import domain.SearchIndexData;
-import features.recommendation.Graph;
-import features.search.QueryProcessor;
-import features.search.ReRanker;
-import features.search.Suggester;
+import features.search.Similarity;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
 import utils.LoggingService;
-import storage.BookLoader;
-import storage.IndexLoader;
 import ui.gui.controllers.MainViewController;
 import ui.gui.services.DevShelfService;
+import utils.StemCache;
 import utils.StopWordLoader;
-import utils.TextProcessor;
 import utils.UpdateService;
 
 import java.io.File;
-import java.util.*;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
 
 public class GuiMain extends Application {
 
-    private static final String BOOKS_RES = "/data/book.json";
-    private static final String INDEX_RES = "/data/index_data.json";
     private static final String STOPWORDS_RES = "/data/stopword.txt";
+    private static final String STEM_CACHE_RES = "/data/stem_cache.json";
 
     @Override
     public void start(Stage stage) throws Exception {
         System.out.println("Starting DevShelf...");
+        long startedAt = System.nanoTime();
 
         String appDataPath = utils.StorageUtils.getAppDataDir();
         String logsPath = appDataPath + File.separator + "logs.json";
-        String popularityPath = appDataPath + File.separator + "popularity.json";
         System.out.println("User Data Directory: " + appDataPath);
 
-        BookLoader bookLoader = new BookLoader(BOOKS_RES);
-        List<Book> books = bookLoader.loadBooks();
-        Map<Integer, Book> bookMap = new HashMap<>();
-        for(Book b : books) bookMap.put(b.getBookId(), b);
-
-        IndexLoader indexLoader = new IndexLoader(INDEX_RES);
-        SearchIndexData indexData = indexLoader.loadIndex();
-
         Set<String> stopWords = StopWordLoader.loadStopWords(STOPWORDS_RES);
-        TextProcessor textProcessor = new TextProcessor(stopWords);
-
-        QueryProcessor queryProcessor = new QueryProcessor(textProcessor,
-                indexData.getInvertedIndex(), indexData.getTfIdfVectors(), indexData.getIdfScores());
-
+        // Only a speed-up for the first queries, so it loads alongside everything else
+        new Thread(() -> StemCache.preloadShared(STEM_CACHE_RES), "devshelf-stem-cache").start();
 
+        // Ranking model: cosine (default), bm25 or bm25f, e.g. -Ddevshelf.similarity=bm25f
+        Similarity similarity = Similarity.byName(System.getProperty("devshelf.similarity", "cosine"));
+        // Recommendations: direct neighbors (default) or -Ddevshelf.recommendations=pagerank, read by DevShelfService
         LoggingService loggingService = new LoggingService(logsPath);
-        ReRanker reRanker = new ReRanker(bookMap, popularityPath);
-
-        System.out.println("Building recommendation graph...");
-        Graph graph = new Graph();
-        graph.buildGraph(books);
-        System.out.println("Graph built with " + graph.adjList.size() + " nodes.");
-
-        List<String> titles = new ArrayList<>();
-        for(Book b : books) if(b.getTitle() != null) titles.add(b.getTitle());
-        Suggester suggester = new Suggester(titles, stopWords);
-
-        DevShelfService service = new DevShelfService(bookMap, queryProcessor, reRanker, suggester, graph, loggingService);
 
+        // 1. The window first, with search disabled until the engine is ready
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/ui/gui/fxml/MainView.fxml"));
         Parent root = loader.load();
-
         MainViewController controller = loader.getController();
-        controller.setService(service);
 
         Scene scene = new Scene(root);
         Image logo = new Image("assets/images/DevShelf_Logo.jpg");
@@ -80,10 +53,32 @@ public class GuiMain extends Application {
         stage.setTitle("DevShelf");
         stage.setScene(scene);
         stage.show();
-
-        new Thread(() -> {
-        new UpdateService().checkForUpdates();
-        }).start();
+        System.out.printf("🪟 Window shown after %.0f ms.%n", (System.nanoTime() - startedAt) / 1e6);
+
+        // 2. The engine loads in the background; search and trending come first,
+        //    recommendations and autocomplete switch on when their stage finishes
+        EngineHolder.startAsync(stopWords, similarity).whenComplete((engines, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                System.err.println("❌ Engine failed to start: " + cause);
+                Platform.runLater(() -> controller.showStartupError(cause));
+                return;
+            }
+            DevShelfService service = new DevShelfService(engines, loggingService);
+            Platform.runLater(() -> {
+                controller.setService(service);
+                System.out.printf("✅ Search ready after %.0f ms.%n", (System.nanoTime() - startedAt) / 1e6);
+            });
+            engines.current().whenAutocompleteReady().thenRun(() -> System.out.printf(
+                    "🔤 Autocomplete ready after %.0f ms.%n", (System.nanoTime() - startedAt) / 1e6));
+            engines.current().whenGraphReady().thenRun(() -> System.out.printf(
+                    "🕸️ Recommendations ready after %.0f ms.%n", (System.nanoTime() - startedAt) / 1e6));
+
+            // Downloaded data is built into a new engine in the background and swapped in, no restart needed
+            new Thread(() -> {
+                if (new UpdateService().checkForUpdates()) engines.reloadAsync();
+            }).start();
+        });
 
         System.out.println("✅ GUI Started successfully.");
     }
@@ -3,31 +3,75 @@ package core;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import domain.Book;
-import domain.Posting;
+import domain.CatalogDelta;
+import domain.PostingList;
 import domain.SearchIndexData;
+import domain.UpdateManifest;
+import features.recommendation.Graph;
+import features.recommendation.GraphStore;
 import features.search.IndexBuilder;
+import features.search.ParallelIndexBuilder;
+import features.search.SegmentedIndex;
+import storage.BinaryIndexWriter;
 import storage.BookLoader;
+import storage.IndexLoader;
+import storage.MappedIndex;
 import utils.StopWordLoader;
+import utils.StorageUtils;
+import utils.StemCache;
 import utils.TextProcessor;
 import utils.TfIdfCalculator;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class IndexerMain {
 
     // OUTPUT: We write to the source folder so Maven includes it in the build
-    private static final String INDEX_OUTPUT_PATH = "src/main/resources/data/index_data.json";
+    private static final String INDEX_OUTPUT_PATH = "src/main/resources/data/index_data.bin";
+    // Stems of the catalog vocabulary, preloaded by the apps so queries start with a warm StemCache
+    private static final String STEM_CACHE_OUTPUT_PATH = "src/main/resources/data/stem_cache.json";
+    // Recommendation graph, precomputed so the apps only load it
+    private static final String GRAPH_OUTPUT_PATH = "src/main/resources/data/graph.bin";
+    // Optional human-readable export (pass --json), never shipped or loaded by the app
+    private static final String JSON_EXPORT_PATH = "target/index_data.json";
+    // --manifest: a directory ready to be published on the update server
+    private static final String UPDATE_OUTPUT_DIR = "target/update";
+    private static final String[] UPDATE_FILES = {"book.json", "index_data.bin", "graph.bin"};
 
     // INPUTS: We use Resource Paths (starts with /) because Loaders use getResourceAsStream
     private static final String STOPWORD_RES = "/data/stopword.txt";
     private static final String BOOK_RES = "/data/book.json";
+    private static final String INDEX_RES = "/data/index_data.bin";
+
+    private static final int BENCHMARK_ROUNDS = 5;
 
     public static void main(String[] args) {
         System.out.println("--- Starting Offline Indexer ---");
+        List<String> options = Arrays.asList(args);
+        boolean serial = options.contains("--serial");
+        int threads = parseThreads(options);
+
+        String deltaPath = optionValue(options, "--apply-delta=");
+        if (deltaPath != null) {
+            applyDelta(new File(deltaPath));
+            return;
+        }
+
+        String manifestVersion = optionValue(options, "--manifest=");
+        if (manifestVersion != null) {
+            writeUpdateManifest(manifestVersion, optionValue(options, "--manifest-delta="));
+            return;
+        }
+
         try {
             // 1. Prepare Output File
             File outputFile = new File(INDEX_OUTPUT_PATH);
@@ -37,43 +81,57 @@ public class IndexerMain {
             // 2. Load Data using updated Loaders
             System.out.println("Loading stopwords from resource: " + STOPWORD_RES);
             Set<String> stopWords = StopWordLoader.loadStopWords(STOPWORD_RES);
-            TextProcessor textProcessor = new TextProcessor(stopWords);
 
             System.out.println("Loading books from resource: " + BOOK_RES);
             BookLoader loader = new BookLoader(BOOK_RES);
-            IndexBuilder indexer = new IndexBuilder(textProcessor);
-            TfIdfCalculator tfIdfCalculator = new TfIdfCalculator();
-
-            // 3. Indexing Process
-            System.out.println("Indexing books...");
             List<Book> allBooks = loader.loadBooksFromSource(BOOK_RES);
             if (allBooks.isEmpty()) {
                 System.err.println("❌ Critical Error: No books loaded. Check book.json path.");
                 return;
             }
 
-            for(Book book : allBooks) {
-                indexer.indexDocument(book);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                if (options.contains("--benchmark")) {
+                    runBenchmark(allBooks, stopWords, pool);
+                }
+
+                // 3. Indexing Process + 4. Calculations
+                Map<String, Long> timings = new LinkedHashMap<>();
+                SearchIndexData indexData = serial
+                        ? buildSerial(allBooks, stopWords, timings)
+                        : buildParallel(allBooks, stopWords, pool, timings);
+                System.out.println("Indexing Complete. Found " + indexData.getInvertedIndex().size() + " unique terms.");
+                printPostingMemory(indexData.getInvertedIndex());
+
+                // 5. Save Data
+                long start = System.nanoTime();
+                System.out.println("Saving binary index to: " + outputFile.getAbsolutePath());
+                new BinaryIndexWriter().write(indexData, allBooks.size(), outputFile);
+                timings.put("write", System.nanoTime() - start);
+                System.out.println("Binary index size: " + outputFile.length() + " bytes");
+
+                printTimings(serial ? "serial" : "parallel (" + threads + " threads)", timings);
+
+                StemCache stemCache = StemCache.shared();
+                System.out.println("🌱 Stem cache: " + stemCache);
+                stemCache.save(new File(STEM_CACHE_OUTPUT_PATH));
+                System.out.println("Saved stem cache to: " + new File(STEM_CACHE_OUTPUT_PATH).getAbsolutePath());
+
+                // 6. Recommendation graph
+                writeGraph(allBooks, pool);
+
+                if (options.contains("--json")) {
+                    File jsonFile = new File(JSON_EXPORT_PATH);
+                    jsonFile.getParentFile().mkdirs();
+                    System.out.println("Exporting debug JSON to: " + jsonFile.getAbsolutePath());
+                    ObjectMapper mapper = new ObjectMapper();
+                    mapper.enable(SerializationFeature.INDENT_OUTPUT);
+                    mapper.writeValue(jsonFile, indexData);
+                }
+            } finally {
+                pool.shutdown();
             }
-            Map<String, List<Posting>> invertedIndex = indexer.getInvertedIndex();
-            System.out.println("Indexing Complete. Found " + invertedIndex.size() + " unique terms.");
-
-            // 4. Calculations
-            System.out.println("Calculating TF-IDF vectors...");
-            tfIdfCalculator.calculateIdf(invertedIndex, allBooks.size());
-            tfIdfCalculator.calculateTfIdf(invertedIndex);
-
-            // 5. Save Data
-            SearchIndexData indexData = new SearchIndexData(
-                    invertedIndex,
-                    tfIdfCalculator.getTfIdfVectors(),
-                    tfIdfCalculator.getIdfScores()
-            );
-
-            System.out.println("Saving index to: " + outputFile.getAbsolutePath());
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-            mapper.writeValue(outputFile, indexData);
 
             System.out.println("--- ✅ Indexer Finished Successfully! --- ");
 
@@ -82,5 +140,210 @@ public class IndexerMain {
             System.out.println(" --- ❌ Indexer failed with an error. --- ");
         }
     }
-}
 
+    // The original single-threaded pipeline, kept as the reference for --serial and --benchmark
+    private static SearchIndexData buildSerial(List<Book> books, Set<String> stopWords, Map<String, Long> timings) {
+        long start = System.nanoTime();
+        IndexBuilder indexer = new IndexBuilder(new TextProcessor(stopWords));
+        for (Book book : books) {
+            indexer.indexDocument(book);
+        }
+        Map<String, PostingList> invertedIndex = indexer.getInvertedIndex();
+        invertedIndex.values().forEach(PostingList::trimToSize);
+        timings.put("index", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        TfIdfCalculator tfIdfCalculator = new TfIdfCalculator();
+        tfIdfCalculator.calculateIdf(invertedIndex, books.size());
+        timings.put("idf", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        tfIdfCalculator.calculateTfIdf(invertedIndex);
+        timings.put("tf-idf", System.nanoTime() - start);
+
+        return new SearchIndexData(invertedIndex, tfIdfCalculator.getDictionary(),
+                tfIdfCalculator.getDocVectors(), tfIdfCalculator.getIdfScores(), indexer.getFieldLengths());
+    }
+
+    private static SearchIndexData buildParallel(List<Book> books, Set<String> stopWords,
+                                                 ForkJoinPool pool, Map<String, Long> timings) {
+        long start = System.nanoTime();
+        ParallelIndexBuilder indexer = new ParallelIndexBuilder(stopWords, pool);
+        Map<String, PostingList> invertedIndex = indexer.build(books);
+        timings.put("index", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        TfIdfCalculator tfIdfCalculator = new TfIdfCalculator();
+        tfIdfCalculator.calculateIdfParallel(invertedIndex, books.size(), pool);
+        timings.put("idf", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        tfIdfCalculator.calculateTfIdfParallel(invertedIndex, pool);
+        timings.put("tf-idf", System.nanoTime() - start);
+
+        return new SearchIndexData(invertedIndex, tfIdfCalculator.getDictionary(),
+                tfIdfCalculator.getDocVectors(), tfIdfCalculator.getIdfScores(), indexer.getFieldLengths());
+    }
+
+    private static void writeGraph(List<Book> books, ForkJoinPool pool) throws IOException {
+        long start = System.nanoTime();
+        Graph graph = new Graph();
+        graph.buildGraph(books, pool);
+        long built = System.nanoTime();
+
+        File graphFile = new File(GRAPH_OUTPUT_PATH);
+        GraphStore.write(graph, books, graphFile);
+        System.out.printf("🕸️ Recommendation graph: %d books, %,d edges (top %d each), %,d bytes in memory, built in %.2f ms%n",
+                graph.size(), graph.edgeCount(), Graph.DEFAULT_MAX_NEIGHBORS, graph.estimatedBytes(), (built - start) / 1e6);
+        System.out.println("Saved recommendation graph to: " + graphFile.getAbsolutePath() + " (" + graphFile.length() + " bytes)");
+    }
+
+    // Heap held by the in-memory postings vs. what the same data costs as boxed List<Posting>
+    private static void printPostingMemory(Map<String, PostingList> invertedIndex) {
+        long compact = 0, boxed = 0;
+        for (PostingList postings : invertedIndex.values()) {
+            compact += postings.estimatedBytes();
+            boxed += postings.estimatedBoxedBytes();
+        }
+        System.out.printf("Posting memory: %,d bytes (boxed List<Posting> would be ~%,d bytes, %.1f%% saved)%n",
+                compact, boxed, 100.0 * (boxed - compact) / Math.max(1, boxed));
+    }
+
+    /**
+     * Runs both pipelines a few times (after one warm-up round each) and reports
+     * the best time per stage, so the speedup can be compared on the same machine.
+     */
+    private static void runBenchmark(List<Book> books, Set<String> stopWords, ForkJoinPool pool) {
+        System.out.println("Benchmarking serial vs parallel build over " + BENCHMARK_ROUNDS + " rounds...");
+        Map<String, Long> bestSerial = new LinkedHashMap<>();
+        Map<String, Long> bestParallel = new LinkedHashMap<>();
+
+        for (int round = 0; round <= BENCHMARK_ROUNDS; round++) {
+            Map<String, Long> serialTimings = new LinkedHashMap<>();
+            Map<String, Long> parallelTimings = new LinkedHashMap<>();
+            buildSerial(books, stopWords, serialTimings);
+            buildParallel(books, stopWords, pool, parallelTimings);
+            if (round == 0) continue; // warm-up
+
+            serialTimings.forEach((stage, nanos) -> bestSerial.merge(stage, nanos, Math::min));
+            parallelTimings.forEach((stage, nanos) -> bestParallel.merge(stage, nanos, Math::min));
+        }
+
+        long serialTotal = bestSerial.values().stream().mapToLong(Long::longValue).sum();
+        long parallelTotal = bestParallel.values().stream().mapToLong(Long::longValue).sum();
+
+        System.out.println("\n📊 Build timing report (" + books.size() + " books, " + pool.getParallelism() + " threads)");
+        System.out.printf("   %-8s %12s %12s %9s%n", "stage", "serial ms", "parallel ms", "speedup");
+        for (String stage : bestSerial.keySet()) {
+            long s = bestSerial.get(stage);
+            long p = bestParallel.get(stage);
+            System.out.printf("   %-8s %12.2f %12.2f %8.2fx%n", stage, s / 1e6, p / 1e6, (double) s / p);
+        }
+        System.out.printf("   %-8s %12.2f %12.2f %8.2fx%n%n", "total", serialTotal / 1e6, parallelTotal / 1e6,
+                (double) serialTotal / parallelTotal);
+    }
+
+    private static void printTimings(String mode, Map<String, Long> timings) {
+        StringBuilder sb = new StringBuilder("⏱️ Build timings, " + mode + ":");
+        timings.forEach((stage, nanos) -> sb.append(String.format(" %s=%.2fms", stage, nanos / 1e6)));
+        System.out.println(sb);
+    }
+
+    /**
+     * Incremental path: applies a CatalogDelta to the installed catalog by writing a
+     * delta segment + tombstones into AppData, instead of rebuilding the whole index.
+     */
+    private static void applyDelta(File deltaFile) {
+        System.out.println("Applying catalog delta: " + deltaFile.getAbsolutePath());
+        String segmentsPath = StorageUtils.getAppDataDir() + File.separator + "segments";
+
+        try {
+            CatalogDelta delta = new ObjectMapper().readValue(deltaFile, CatalogDelta.class);
+            Set<String> stopWords = StopWordLoader.loadStopWords(STOPWORD_RES);
+            MappedIndex base = new IndexLoader(INDEX_RES).loadIndex();
+
+            long start = System.nanoTime();
+            try (SegmentedIndex index = SegmentedIndex.open(base, new File(segmentsPath), new TextProcessor(stopWords))) {
+                index.apply(delta);
+                System.out.printf("⏱️ Index updated in %.2f ms (%d live documents)%n",
+                        (System.nanoTime() - start) / 1e6, index.snapshot().getLiveDocCount());
+            }
+
+            BookLoader bookLoader = new BookLoader(BOOK_RES);
+            bookLoader.saveBooks(delta.applyTo(bookLoader.loadBooks()));
+            System.out.println("--- ✅ Catalog delta applied! --- ");
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.out.println(" --- ❌ Catalog delta failed with an error. --- ");
+        }
+    }
+
+    /**
+     * Publishing path: copies the data files into target/update with a manifest.json listing
+     * their sizes and hashes, for UpdateService. --manifest-delta=FROM:delta.json adds a
+     * CatalogDelta that upgrades clients on version FROM without the full download.
+     */
+    private static void writeUpdateManifest(String version, String deltaSpec) {
+        int colon = deltaSpec == null ? -1 : deltaSpec.indexOf(':');
+        if (deltaSpec != null && colon <= 0) {
+            System.err.println("❌ Bad --manifest-delta value '" + deltaSpec + "', expected --manifest-delta=FROM:delta.json");
+            return;
+        }
+        File outputDir = new File(UPDATE_OUTPUT_DIR);
+        System.out.println("Writing update v" + version + " to: " + outputDir.getAbsolutePath());
+
+        try {
+            outputDir.mkdirs();
+            UpdateManifest manifest = new UpdateManifest();
+            manifest.setVersion(version);
+
+            // 1. The full data files
+            for (String name : UPDATE_FILES) {
+                File target = new File(outputDir, name);
+                Files.copy(new File("src/main/resources/data", name).toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                manifest.getFiles().add(UpdateManifest.FileEntry.of(name, target));
+            }
+
+            // 2. An optional delta from an older version
+            if (deltaSpec != null) {
+                String from = deltaSpec.substring(0, colon);
+                String name = "deltas/" + from + "-" + version + ".json";
+                File target = new File(outputDir, name);
+                target.getParentFile().mkdirs();
+                Files.copy(new File(deltaSpec.substring(colon + 1)).toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+
+                UpdateManifest.FileEntry file = UpdateManifest.FileEntry.of(name, target);
+                UpdateManifest.DeltaEntry delta = new UpdateManifest.DeltaEntry();
+                delta.setName(name);
+                delta.setSize(file.getSize());
+                delta.setSha256(file.getSha256());
+                delta.setFrom(from);
+                delta.setTo(version);
+                manifest.getDeltas().add(delta);
+            }
+
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.enable(SerializationFeature.INDENT_OUTPUT);
+            mapper.writeValue(new File(outputDir, "manifest.json"), manifest);
+            System.out.println("--- ✅ Update manifest written (" + manifest.getFiles().size() + " files, "
+                    + manifest.getDeltas().size() + " delta(s)). --- ");
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.out.println(" --- ❌ Writing the update manifest failed with an error. --- ");
+        }
+    }
+
+    private static int parseThreads(List<String> options) {
+        String threads = optionValue(options, "--threads=");
+        return threads != null ? Math.max(1, Integer.parseInt(threads)) : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static String optionValue(List<String> options, String prefix) {
+        for (String option : options) {
+            if (option.startsWith(prefix)) return option.substring(prefix.length());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,54 @@
+package core;
+
+import features.search.Similarity;
+import ui.gui.services.DevShelfService;
+import ui.http.DevShelfHttpServer;
+import utils.LoggingService;
+import utils.StemCache;
+import utils.StopWordLoader;
+import utils.UpdateService;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Headless entry point: the same engine as the GUI, served as a JSON API.
+ *
+ *   -Ddevshelf.port=8080          port to listen on
+ *   -Ddevshelf.maxConcurrent=N    most requests handled at once (default 4 per CPU)
+ *   -Ddevshelf.similarity=cosine  ranking model, as for the GUI
+ *   -Ddevshelf.recommendations=neighbors|pagerank  default mode of /api/recommendations, as for the GUI
+ */
+public class ServerMain {
+
+    private static final String STOPWORDS_RES = "/data/stopword.txt";
+    private static final String STEM_CACHE_RES = "/data/stem_cache.json";
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("Starting DevShelf server...");
+
+        String appDataPath = utils.StorageUtils.getAppDataDir();
+        String logsPath = appDataPath + File.separator + "logs.json";
+        System.out.println("User Data Directory: " + appDataPath);
+
+        Set<String> stopWords = StopWordLoader.loadStopWords(STOPWORDS_RES);
+        StemCache.preloadShared(STEM_CACHE_RES);
+
+        Similarity similarity = Similarity.byName(System.getProperty("devshelf.similarity", "cosine"));
+        EngineHolder engines = new EngineHolder(stopWords, similarity);
+
+        LoggingService loggingService = new LoggingService(logsPath);
+        DevShelfService service = new DevShelfService(engines, loggingService);
+
+        int port = Integer.getInteger("devshelf.port", 8080);
+        int maxConcurrent = Integer.getInteger("devshelf.maxConcurrent", Runtime.getRuntime().availableProcessors() * 4);
+        DevShelfHttpServer server = new DevShelfHttpServer(service, port, maxConcurrent);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(2)));
+        server.start();
+
+        // Requests keep being served from the old engine until the updated one is built
+        new Thread(() -> {
+            if (new UpdateService().checkForUpdates()) engines.reloadAsync();
+        }).start();
+    }
+}
@@ -0,0 +1,382 @@
+package core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import domain.Book;
+import domain.CatalogDelta;
+import domain.UpdateManifest;
+import domain.UpdateManifest.DeltaEntry;
+import domain.UpdateManifest.FileEntry;
+import features.recommendation.GraphStore;
+import features.search.SegmentedIndex;
+import storage.BookLoader;
+import storage.IndexLoader;
+import storage.IndexSnapshot;
+import storage.MappedIndex;
+import utils.StopWordLoader;
+import utils.StorageUtils;
+import utils.TextProcessor;
+import utils.UpdateService;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Offline check of {@link UpdateService} against a stub update server on localhost.
+ * Nothing here is used by the app.
+ *
+ * Usage: UpdateCheckMain
+ *   AppData is redirected to a fresh temporary directory (through user.home), so the real
+ *   catalog is never touched. Every step starts from what the previous one left on disk:
+ *   1. first update: only the changed book.json is fetched, gzip-compressed
+ *   2. a download cut off halfway: the next check resumes it with a Range request (206)
+ *   3. a file that does not match the manifest: nothing is installed, the version is not recorded
+ *   4. a delta: the new book lands in a delta segment of the index, nothing else is fetched
+ *   5. a delta that fails: falls back to the full files; the index did not change, so the segment stays
+ *   6. a new full index: it replaces the base and the delta segments, under index_data-<version>.bin
+ *   7. another index while the old one is mapped: it goes next to it, never over it; the next load
+ *      maps it and removes the old one
+ */
+public class UpdateCheckMain {
+
+    private static final String BOOK_RES = "/data/book.json";
+    private static final String STOPWORD_RES = "/data/stopword.txt";
+    private static final String INDEX_RES = "/data/index_data.bin";
+    private static final String MANIFEST = "manifest.json";
+    private static final String BOOKS = "book.json";
+    private static final String INDEX = IndexLoader.INDEX_FILE_NAME;
+    private static final String GRAPH = GraphStore.GRAPH_FILE_NAME;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        File home = Files.createTempDirectory("devshelf-update-check").toFile();
+        System.setProperty("user.home", home.getAbsolutePath()); // before anything looks up AppData
+        File appData = new File(StorageUtils.getAppDataDir());
+        File segments = new File(appData, "segments");
+
+        Set<String> stopWords = StopWordLoader.loadStopWords(STOPWORD_RES);
+        List<Book> books = new BookLoader(BOOK_RES).loadBooksFromSource(BOOK_RES);
+        StubServer server = new StubServer();
+        server.put(INDEX, resource(INDEX));
+        server.put(GRAPH, resource(GRAPH));
+        UpdateService updates = new UpdateService(server.url());
+        System.out.println("Checking UpdateService against " + server.url() + " (AppData in " + appData + ")...");
+
+        try {
+            // 1. First update: book.json changed, index and graph are the bundled ones
+            List<Book> v2 = retitled(books, "v2");
+            server.put(BOOKS, json(v2));
+            server.publish("2", BOOKS, INDEX, GRAPH);
+            check("1. first update installs", updates.checkForUpdates());
+            check("1. only book.json is fetched, gzipped", server.takeRequests().equals(
+                    List.of(MANIFEST + " gzip", BOOKS + " gzip")));
+            check("1. book.json matches the manifest", installed(appData, BOOKS, server));
+
+            // 2. The connection drops halfway through book.json; the next check continues it
+            List<Book> v3 = retitled(v2, "v3");
+            server.put(BOOKS, json(v3));
+            server.publish("3", BOOKS, INDEX, GRAPH);
+            server.cutOnce(BOOKS);
+            check("2. interrupted download reports no change", !updates.checkForUpdates());
+            check("2. version not recorded", "2".equals(installedVersion(appData)));
+            server.takeRequests();
+            check("2. retry installs", updates.checkForUpdates());
+            List<String> retry = server.takeRequests();
+            check("2. retry resumes with a Range request", retry.size() == 2 && retry.get(1).startsWith(BOOKS + " bytes=")
+                    && !retry.get(1).equals(BOOKS + " bytes=0-"));
+            check("2. resumed book.json matches the manifest", installed(appData, BOOKS, server));
+
+            // 3. The server sends something else than its manifest promises
+            List<Book> v4 = retitled(v3, "v4");
+            server.put(BOOKS, json(v4));
+            server.publish("4", BOOKS, INDEX, GRAPH);
+            server.serveInstead(BOOKS, json(retitled(v3, "tampered")));
+            byte[] before = Files.readAllBytes(new File(appData, BOOKS).toPath());
+            check("3. checksum mismatch reports no change", !updates.checkForUpdates());
+            check("3. installed book.json untouched", Arrays.equals(before, Files.readAllBytes(new File(appData, BOOKS).toPath())));
+            check("3. version not recorded", "3".equals(installedVersion(appData)));
+            check("3. mismatching download discarded", partFiles(appData).isEmpty());
+            server.serveInstead(BOOKS, null);
+            check("3. retry with the right file installs", updates.checkForUpdates() && installed(appData, BOOKS, server));
+            server.takeRequests();
+
+            // 4. One new book as a delta
+            Book added = new Book(maxId(books) + 1, "Stub Delta Book", "Update Check", "Added by a catalog delta.",
+                    "Java", "Testing", new String[]{"update"}, 4.0f, null, null);
+            CatalogDelta delta = new CatalogDelta();
+            delta.setUpserts(List.of(added));
+            List<Book> v5 = delta.applyTo(v4);
+            server.put("deltas/4.json", json(delta));
+            server.put(BOOKS, json(v5));
+            server.publish("5", BOOKS, INDEX, GRAPH);
+            server.addDelta("4", "5", "deltas/4.json");
+            check("4. delta installs", updates.checkForUpdates());
+            check("4. only the delta is fetched", server.takeRequests().equals(List.of(MANIFEST + " gzip", "deltas/4.json gzip")));
+            check("4. new book in book.json", containsBook(appData, added.getBookId()));
+            check("4. new book in a delta segment", isDeltaSegment(liveSegment(segments, stopWords, added.getBookId())));
+
+            // 5. The next delta is corrupt: full files instead, of which only book.json changed
+            List<Book> v6 = retitled(v5, "v6");
+            server.put("deltas/5.json", json(new CatalogDelta()));
+            server.serveInstead("deltas/5.json", "{\"upserts\": [".getBytes());
+            server.put(BOOKS, json(v6));
+            server.publish("6", BOOKS, INDEX, GRAPH);
+            server.addDelta("5", "6", "deltas/5.json");
+            check("5. fallback installs", updates.checkForUpdates());
+            List<String> fallback = server.takeRequests();
+            check("5. full book.json fetched, index not", fallback.contains(BOOKS + " gzip") && !fallback.contains(INDEX + " gzip"));
+            check("5. book.json matches the manifest", installed(appData, BOOKS, server));
+            check("5. delta segment kept with the old index", isDeltaSegment(liveSegment(segments, stopWords, added.getBookId())));
+
+            // 6. A new full index, built from the current catalog
+            server.put(INDEX, BenchmarkMain.indexBytes(v6, stopWords));
+            server.publish("7", BOOKS, INDEX, GRAPH);
+            check("6. new index installs", updates.checkForUpdates());
+            check("6. only the index is fetched", server.takeRequests().equals(List.of(MANIFEST + " gzip", INDEX + " gzip")));
+            IndexSnapshot.Segment segment = liveSegment(segments, stopWords, added.getBookId());
+            check("6. new book found in the new base, segments discarded", segment != null && !isDeltaSegment(segment));
+            check("6. index installed under its version's name", installedAs(appData, IndexLoader.installedFileName("7"), INDEX, server));
+
+            // 7. Another index while the engine still maps the current one (Windows cannot replace a mapped file)
+            MappedIndex live = new IndexLoader(INDEX_RES).loadIndex();
+            byte[] liveBytes = Files.readAllBytes(new File(appData, IndexLoader.installedFileName("7")).toPath());
+            server.put(INDEX, BenchmarkMain.indexBytes(retitled(v6, "v8"), stopWords));
+            server.publish("8", BOOKS, INDEX, GRAPH);
+            check("7. index update installs", updates.checkForUpdates());
+            check("7. mapped index left as it was", Arrays.equals(liveBytes,
+                    Files.readAllBytes(new File(appData, IndexLoader.installedFileName("7")).toPath())));
+            check("7. new index next to it", installedAs(appData, IndexLoader.installedFileName("8"), INDEX, server));
+            check("7. the engine's index still reads", live.getDocCount() == v6.size());
+            check("7. next load maps the new index",
+                    new IndexLoader(INDEX_RES).loadIndex().getSizeInBytes() == server.files.get(INDEX).length);
+            check("7. older index removed", !new File(appData, IndexLoader.installedFileName("7")).exists());
+
+            check("all versions recorded", "8".equals(installedVersion(appData)) && partFiles(appData).isEmpty());
+        } finally {
+            server.stop();
+            deleteRecursively(home);
+        }
+
+        System.out.println(failures == 0
+                ? "✅ All update checks passed."
+                : "❌ " + failures + " update check(s) failed!");
+        if (failures > 0) System.exit(1);
+    }
+
+    // --- Checks ---
+
+    private static void check(String name, boolean passed) {
+        System.out.println("   " + (passed ? "✔" : "✘") + " " + name);
+        if (!passed) failures++;
+    }
+
+    private static boolean installed(File appData, String name, StubServer server) throws IOException {
+        return installedAs(appData, name, name, server);
+    }
+
+    private static boolean installedAs(File appData, String localName, String name, StubServer server) throws IOException {
+        File file = new File(appData, localName);
+        return file.exists() && Arrays.equals(Files.readAllBytes(file.toPath()), server.files.get(name));
+    }
+
+    private static String installedVersion(File appData) throws IOException {
+        return MAPPER.readValue(new File(appData, MANIFEST), UpdateManifest.class).getVersion();
+    }
+
+    private static List<String> partFiles(File appData) {
+        String[] names = new File(appData, "updates").list((dir, name) -> name.endsWith(".part"));
+        return names == null ? List.of() : Arrays.asList(names);
+    }
+
+    private static boolean containsBook(File appData, int bookId) throws IOException {
+        Book[] installed = MAPPER.readValue(new File(appData, BOOKS), Book[].class);
+        return Arrays.stream(installed).anyMatch(b -> b.getBookId() == bookId);
+    }
+
+    // The segment the app would find the book in, or null if it is not searchable
+    private static IndexSnapshot.Segment liveSegment(File segments, Set<String> stopWords, int bookId) {
+        try (SegmentedIndex index = SegmentedIndex.openOrBase(new IndexLoader(INDEX_RES).loadIndex(), segments,
+                new TextProcessor(stopWords))) {
+            return index.snapshot().segmentOf(bookId);
+        }
+    }
+
+    private static boolean isDeltaSegment(IndexSnapshot.Segment segment) {
+        return segment != null && !"base".equals(segment.getName());
+    }
+
+    // --- Test data ---
+
+    // A copy with the first title changed, so the file's hash changes
+    private static List<Book> retitled(List<Book> books, String version) {
+        List<Book> copy = new ArrayList<>(books);
+        Book first = copy.get(0);
+        copy.set(0, new Book(first.getBookId(), first.getTitle().replaceAll(" \\(.*\\)$", "") + " (" + version + ")",
+                first.getAuthor(), first.getDescription(), first.getProgLang(), first.getCategory(), first.getTag(),
+                first.getRating(), first.getCoverUrl(), first.getDownLink()));
+        return copy;
+    }
+
+    private static int maxId(List<Book> books) {
+        return books.stream().mapToInt(Book::getBookId).max().orElse(0);
+    }
+
+    private static byte[] json(Object value) throws IOException {
+        return MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(value);
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = UpdateCheckMain.class.getResourceAsStream("/data/" + name)) {
+            if (in == null) throw new IOException("Missing resource /data/" + name);
+            return in.readAllBytes();
+        }
+    }
+
+    private static void deleteRecursively(File root) throws IOException {
+        try (Stream<java.nio.file.Path> paths = Files.walk(root.toPath())) {
+            for (java.nio.file.Path path : (Iterable<java.nio.file.Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    // --- Stub server ---
+
+    /**
+     * Serves files and a manifest listing them, like the real update server: gzip when the
+     * client accepts it, "Range: bytes=N-" as 206. Can cut a response short or send other
+     * bytes than the manifest describes. Records one line per request, e.g. "book.json gzip".
+     */
+    private static final class StubServer {
+        final Map<String, byte[]> files = new ConcurrentHashMap<>();
+        private final Map<String, byte[]> substitutes = new ConcurrentHashMap<>();
+        private final Set<String> cut = ConcurrentHashMap.newKeySet();
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        private final HttpServer server;
+        private volatile UpdateManifest manifest = new UpdateManifest();
+
+        StubServer() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", this::handle);
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        }
+
+        void put(String name, byte[] content) {
+            files.put(name, content);
+        }
+
+        // Lists these files as version 'version', without deltas
+        void publish(String version, String... names) throws IOException {
+            UpdateManifest next = new UpdateManifest();
+            next.setVersion(version);
+            for (String name : names) next.getFiles().add(entry(new FileEntry(), name));
+            manifest = next;
+        }
+
+        void addDelta(String from, String to, String name) throws IOException {
+            DeltaEntry delta = entry(new DeltaEntry(), name);
+            delta.setFrom(from);
+            delta.setTo(to);
+            manifest.getDeltas().add(delta);
+        }
+
+        // Sends these bytes for the file instead of the ones in the manifest (null: stop doing that)
+        void serveInstead(String name, byte[] content) {
+            if (content == null) substitutes.remove(name);
+            else substitutes.put(name, content);
+        }
+
+        // The next response for this file breaks off after half its bytes
+        void cutOnce(String name) {
+            cut.add(name);
+        }
+
+        List<String> takeRequests() {
+            synchronized (requests) {
+                List<String> taken = new ArrayList<>(requests);
+                requests.clear();
+                return taken;
+            }
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private <T extends FileEntry> T entry(T entry, String name) throws IOException {
+            byte[] content = files.get(name);
+            entry.setName(name);
+            entry.setSize(content.length);
+            entry.setSha256(UpdateManifest.sha256(new ByteArrayInputStream(content)));
+            return entry;
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            try {
+                String name = exchange.getRequestURI().getPath().substring(1);
+                byte[] body = MANIFEST.equals(name) ? MAPPER.writeValueAsBytes(manifest)
+                        : substitutes.getOrDefault(name, files.get(name));
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                String encoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                boolean gzip = range == null && encoding != null && encoding.contains("gzip");
+                requests.add(name + (range != null ? " " + range : gzip ? " gzip" : ""));
+                if (body == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+
+                int status = 200;
+                if (range != null) {
+                    int from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                    exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + (body.length - 1) + "/" + body.length);
+                    body = Arrays.copyOfRange(body, from, body.length);
+                    status = 206;
+                } else if (gzip) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+                        out.write(body);
+                    }
+                    body = bytes.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                if (cut.remove(name)) {
+                    out.write(body, 0, body.length / 2);
+                    out.flush();
+                    return; // closing short of Content-Length drops the connection
+                }
+                out.write(body);
+                out.close();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("⚠️ Stub server: " + e);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package domain;
+
+import java.util.function.Function;
+
+/**
+ * The searchable fields of a book, in the order they are indexed. Token
+ * positions run on from one field into the next, so a position can be mapped
+ * back to its field from the per-document field lengths.
+ */
+public enum BookField {
+    TITLE(Book::getTitle),
+    AUTHOR(Book::getAuthor),
+    DESCRIPTION(Book::getDescription),
+    CATEGORY(Book::getCategory),
+    LANGUAGE(Book::getProgLang),
+    TAGS(book -> book.getTag() == null ? null : String.join(" ", book.getTag()));
+
+    public static final int COUNT = values().length;
+
+    private final Function<Book, String> text;
+
+    BookField(Function<Book, String> text) {
+        this.text = text;
+    }
+
+    public String textOf(Book book) {
+        return text.apply(book);
+    }
+}
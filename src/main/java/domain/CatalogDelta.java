@@ -0,0 +1,40 @@
+package domain;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A batch of catalog edits: books to add or replace (matched by bookId) and ids to remove.
+ * Read from JSON, e.g. {"upserts": [ {book...} ], "deletes": [12, 40]}
+ */
+@Getter
+@Setter
+public class CatalogDelta {
+    private List<Book> upserts = new ArrayList<>();
+    private List<Integer> deletes = new ArrayList<>();
+
+    public CatalogDelta() {}
+
+    /**
+     * Returns a new book list with this delta applied, keeping the original order.
+     */
+    public List<Book> applyTo(List<Book> books) {
+        Map<Integer, Book> byId = new LinkedHashMap<>();
+        for (Book b : books) byId.put(b.getBookId(), b);
+        for (Book b : upserts) byId.put(b.getBookId(), b);
+
+        Set<Integer> removed = new HashSet<>(deletes);
+        List<Book> result = new ArrayList<>();
+        for (Book b : byId.values()) {
+            if (!removed.contains(b.getBookId())) result.add(b);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * TF-IDF vector of one document as two parallel arrays: term ids in
+ * ascending order and their weights. Ids refer to the {@link TermDictionary}
+ * (or index segment) the vector was built against.
+ */
+public final class DocVector {
+
+    @Getter
+    private final int[] termIds;
+    @Getter
+    private final float[] weights;
+
+    @JsonCreator
+    public DocVector(@JsonProperty("termIds") int[] termIds, @JsonProperty("weights") float[] weights) {
+        if (termIds.length != weights.length) {
+            throw new IllegalArgumentException("termIds and weights differ in length");
+        }
+        this.termIds = termIds;
+        this.weights = weights;
+    }
+
+    public int size() {
+        return termIds.length;
+    }
+
+    public int termId(int i) {
+        return termIds[i];
+    }
+
+    public float weight(int i) {
+        return weights[i];
+    }
+
+    /**
+     * Weight of a term in this document, or 0 if it does not occur.
+     */
+    public float weightOf(int termId) {
+        int i = Arrays.binarySearch(termIds, termId);
+        return i < 0 ? 0f : weights[i];
+    }
+
+    /**
+     * Euclidean length of the vector (the cosine denominator).
+     */
+    public float norm() {
+        double sumOfSquares = 0.0;
+        for (float weight : weights) sumOfSquares += (double) weight * weight;
+        return (float) Math.sqrt(sumOfSquares);
+    }
+}
@@ -0,0 +1,289 @@
+package domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact posting list for one term: doc ids, frequencies and token positions
+ * live in flat int arrays instead of one Posting object plus a boxed
+ * List<Integer> per document.
+ *
+ * positions of entry i are positions[positionStarts[i] .. positionStarts[i + 1]).
+ * Lists are appended to while indexing and read through {@link Cursor} afterwards.
+ * In JSON it still looks like the old List<Posting>, so debug exports are unchanged.
+ */
+public final class PostingList {
+
+    private int[] docIds;
+    private int[] freqs;
+    private int[] positionStarts;
+    private int[] positions;
+    private int size;
+    private boolean sorted = true;
+
+    public PostingList() {
+        this(4, 8);
+    }
+
+    public PostingList(int expectedDocs, int expectedPositions) {
+        this.docIds = new int[Math.max(1, expectedDocs)];
+        this.freqs = new int[docIds.length];
+        this.positionStarts = new int[docIds.length + 1];
+        this.positions = new int[Math.max(1, expectedPositions)];
+    }
+
+    // --- Building ---
+
+    public void add(int docId, int[] docPositions, int count) {
+        append(docId, docPositions, 0, count);
+    }
+
+    /**
+     * Appends entry i of another list.
+     */
+    public void add(PostingList other, int i) {
+        append(other.docIds[i], other.positions, other.positionStarts[i], other.freqs[i]);
+    }
+
+    private void append(int docId, int[] source, int offset, int count) {
+        if (size == docIds.length) {
+            int capacity = size * 2;
+            docIds = Arrays.copyOf(docIds, capacity);
+            freqs = Arrays.copyOf(freqs, capacity);
+            positionStarts = Arrays.copyOf(positionStarts, capacity + 1);
+        }
+        int start = positionStarts[size];
+        if (start + count > positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(positions.length * 2, start + count));
+        }
+        System.arraycopy(source, offset, positions, start, count);
+
+        if (size > 0 && docId < docIds[size - 1]) sorted = false;
+        docIds[size] = docId;
+        freqs[size] = count;
+        positionStarts[size + 1] = start + count;
+        size++;
+    }
+
+    /**
+     * Merges lists whose doc ids do not overlap into one list ordered by doc id.
+     */
+    public static PostingList merge(List<PostingList> lists) {
+        int docs = 0, totalPositions = 0;
+        for (PostingList list : lists) {
+            docs += list.size;
+            totalPositions += list.positionStarts[list.size];
+        }
+        PostingList merged = new PostingList(docs, totalPositions);
+        int[] next = new int[lists.size()];
+        for (int n = 0; n < docs; n++) {
+            int best = -1;
+            for (int l = 0; l < lists.size(); l++) {
+                PostingList list = lists.get(l);
+                if (next[l] < list.size && (best < 0 || list.docId(next[l]) < lists.get(best).docId(next[best]))) {
+                    best = l;
+                }
+            }
+            merged.add(lists.get(best), next[best]++);
+        }
+        return merged;
+    }
+
+    /**
+     * Reorders entries by doc id (a no-op when they were appended in order).
+     */
+    public void sortByDocId() {
+        if (sorted) return;
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Integer.compare(docIds[a], docIds[b]));
+
+        PostingList copy = new PostingList(size, positionStarts[size]);
+        for (int i : order) copy.add(this, i);
+        this.docIds = copy.docIds;
+        this.freqs = copy.freqs;
+        this.positionStarts = copy.positionStarts;
+        this.positions = copy.positions;
+        this.sorted = true;
+    }
+
+    /**
+     * Drops the spare capacity left by appending once a list is complete.
+     */
+    public void trimToSize() {
+        if (docIds.length == size && positions.length == positionStarts[size]) return;
+        docIds = Arrays.copyOf(docIds, Math.max(1, size));
+        freqs = Arrays.copyOf(freqs, docIds.length);
+        positionStarts = Arrays.copyOf(positionStarts, docIds.length + 1);
+        positions = Arrays.copyOf(positions, Math.max(1, positionStarts[size]));
+    }
+
+    // --- Reading ---
+
+    public int size() {
+        return size;
+    }
+
+    public int docId(int i) {
+        return docIds[i];
+    }
+
+    public int freq(int i) {
+        return freqs[i];
+    }
+
+    public int position(int i, int j) {
+        return positions[positionStarts[i] + j];
+    }
+
+    /**
+     * Index of the first entry at or after 'from' whose doc id is >= target, or size()
+     * if there is none. Gallops ahead in doubling steps and then binary searches, so a
+     * long skip costs O(log distance) instead of a linear walk.
+     */
+    public int advance(int from, int target) {
+        if (from >= size || docIds[from] >= target) return from;
+        int step = 1;
+        int lo = from;
+        int hi = from + 1;
+        while (hi < size && docIds[hi] < target) {
+            lo = hi;
+            step <<= 1;
+            hi = from + step;
+        }
+        hi = Math.min(hi, size);
+        // docIds[lo] < target, and docIds[hi] >= target or hi == size
+        while (lo + 1 < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (docIds[mid] < target) lo = mid;
+            else hi = mid;
+        }
+        return hi;
+    }
+
+    /**
+     * Index of the entry for a doc id, or -1 if the doc is not in this list.
+     */
+    public int find(int docId) {
+        int i = Arrays.binarySearch(docIds, 0, size, docId);
+        return i < 0 ? -1 : i;
+    }
+
+    /**
+     * Within entry i: index of the first position at or after index 'from' that is
+     * >= target, or freq(i) if there is none. Galloping, like {@link #advance}.
+     */
+    public int advancePosition(int i, int from, int target) {
+        int base = positionStarts[i];
+        int count = freqs[i];
+        if (from >= count || positions[base + from] >= target) return from;
+        int step = 1;
+        int lo = from;
+        int hi = from + 1;
+        while (hi < count && positions[base + hi] < target) {
+            lo = hi;
+            step <<= 1;
+            hi = from + step;
+        }
+        hi = Math.min(hi, count);
+        while (lo + 1 < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (positions[base + mid] < target) lo = mid;
+            else hi = mid;
+        }
+        return hi;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Forward-only iterator over the entries of this list.
+     */
+    public final class Cursor {
+        private int index = -1;
+
+        public boolean next() {
+            return ++index < size;
+        }
+
+        public int docId() {
+            return docIds[index];
+        }
+
+        public int freq() {
+            return freqs[index];
+        }
+
+        public int position(int j) {
+            return positions[positionStarts[index] + j];
+        }
+
+        public int index() {
+            return index;
+        }
+    }
+
+    // --- Memory accounting (compressed oops, 12-byte object headers) ---
+
+    /**
+     * Approximate heap used by this list: the object plus four int arrays.
+     */
+    public long estimatedBytes() {
+        return 40 + arrayBytes(docIds.length) + arrayBytes(freqs.length)
+                + arrayBytes(positionStarts.length) + arrayBytes(positions.length);
+    }
+
+    /**
+     * Approximate heap the same data costs as List<Posting> with boxed positions:
+     * ArrayList + backing array per list, a Posting and a positions ArrayList per
+     * document, and an Integer per position outside the -128..127 cache.
+     */
+    public long estimatedBoxedBytes() {
+        long bytes = 24 + arrayBytes(size);
+        for (int i = 0; i < size; i++) {
+            bytes += 24 + 24 + arrayBytes(freqs[i]);
+            for (int j = 0; j < freqs[i]; j++) {
+                if (position(i, j) > 127) bytes += 16;
+            }
+        }
+        return bytes;
+    }
+
+    private static long arrayBytes(int length) {
+        return (16 + 4L * length + 7) & ~7L;
+    }
+
+    // --- JSON (debug export) ---
+
+    @JsonValue
+    public List<Posting> toPostings() {
+        List<Posting> postings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<Integer> docPositions = new ArrayList<>(freqs[i]);
+            for (int j = 0; j < freqs[i]; j++) docPositions.add(position(i, j));
+            postings.add(new Posting(docIds[i], freqs[i], docPositions));
+        }
+        return postings;
+    }
+
+    @JsonCreator
+    public static PostingList fromPostings(List<Posting> postings) {
+        PostingList list = new PostingList(postings.size(), 8);
+        for (Posting posting : postings) {
+            int[] docPositions = posting.getPositions().stream().mapToInt(Integer::intValue).toArray();
+            list.add(posting.getDocId(), docPositions, docPositions.length);
+        }
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return toPostings().toString();
+    }
+}
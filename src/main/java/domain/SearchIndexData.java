@@ -2,30 +2,36 @@ package domain;
 
 import lombok.Getter;
 
-import java.util.List;
 import java.util.Map;
 
 public class SearchIndexData {
     @Getter
-    private Map<String, List<Posting>> invertedIndex;
+    private Map<String, PostingList> invertedIndex;
     @Getter
-    private Map<Integer, Map<String, Double>> tfIdfVectors;
+    private TermDictionary dictionary;
     @Getter
-    private Map<String, Double> idfScores;
+    private Map<Integer, DocVector> docVectors;
+    @Getter
+    private double[] idfScores;
+    @Getter
+    private Map<Integer, int[]> fieldLengths;
 
     public SearchIndexData() {}
 
-    public SearchIndexData(Map<String, List<Posting>> invertedIndex, Map<Integer, Map<String, Double>> tfIdfVectors, Map<String, Double> idfScores) {
+    public SearchIndexData(Map<String, PostingList> invertedIndex, TermDictionary dictionary,
+                           Map<Integer, DocVector> docVectors, double[] idfScores,
+                           Map<Integer, int[]> fieldLengths) {
         this.invertedIndex = invertedIndex;
-        this.tfIdfVectors = tfIdfVectors;
+        this.dictionary = dictionary;
+        this.docVectors = docVectors;
         this.idfScores = idfScores;
+        this.fieldLengths = fieldLengths;
     }
 
 
 }
 
 /**
- * SearchIndexData -> InvertedIndex, tfIdfVectors & idfScores.
-* Contain Our InvertedIndex and Tf-Idf, idfScores ready to be loaded into json
- * json to Map and Map to json
- */
\ No newline at end of file
+ * SearchIndexData -> InvertedIndex, term dictionary, doc vectors, idfScores & per-field doc lengths.
+ * docVectors is keyed by docId; idfScores is indexed by term id (the term's ordinal in the dictionary).
+ */
@@ -8,10 +8,17 @@ public class SearchResult implements Comparable<SearchResult> {
     private final int docId;
     @Getter
     private final double score;
+    @Getter
+    private final TitleMatch titleMatch;
 
     public SearchResult(int docId, double score) {
+        this(docId, score, TitleMatch.NONE);
+    }
+
+    public SearchResult(int docId, double score, TitleMatch titleMatch) {
         this.docId = docId;
         this.score = score;
+        this.titleMatch = titleMatch;
     }
 
     @Override
@@ -21,7 +28,7 @@ public class SearchResult implements Comparable<SearchResult> {
 
     @Override
     public String toString() {
-        return "SearchResult {docId = " + docId + ", score = " + score + "}";
+        return "SearchResult {docId = " + docId + ", score = " + score + ", title = " + titleMatch + "}";
     }
 
 
@@ -0,0 +1,66 @@
+package domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorted, immutable term dictionary that gives every term a dense int id
+ * (its ordinal). Terms are ordered by their UTF-8 bytes, the same order the
+ * binary index stores them in, so an id here is the id in the written file.
+ */
+public final class TermDictionary {
+
+    // Comparing code points gives the same order as comparing unsigned UTF-8 bytes
+    public static final Comparator<String> UTF8_ORDER = TermDictionary::compareUtf8;
+
+    private final String[] terms;
+
+    private TermDictionary(String[] terms) {
+        this.terms = terms;
+    }
+
+    @JsonCreator
+    public static TermDictionary of(Collection<String> terms) {
+        String[] sorted = terms.toArray(new String[0]);
+        Arrays.sort(sorted, UTF8_ORDER);
+        return new TermDictionary(sorted);
+    }
+
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * Returns the id of a term, or -1 if it is not in the dictionary.
+     */
+    public int id(String term) {
+        int id = Arrays.binarySearch(terms, term, UTF8_ORDER);
+        return id < 0 ? -1 : id;
+    }
+
+    public String term(int id) {
+        return terms[id];
+    }
+
+    @JsonValue
+    public List<String> terms() {
+        return List.of(terms);
+    }
+
+    private static int compareUtf8(String a, String b) {
+        int i = 0, j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) return Integer.compare(ca, cb);
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+}
@@ -0,0 +1,12 @@
+package domain;
+
+/**
+ * How the whole query lines up with a book's title, decided from token
+ * positions (the title is the first indexed field). Ordered weakest to strongest.
+ */
+public enum TitleMatch {
+    NONE,
+    CONTAINS,     // the query's tokens appear consecutively somewhere in the title
+    STARTS_WITH,  // ... at the very start of the title
+    EXACT         // the title is exactly the query's tokens
+}
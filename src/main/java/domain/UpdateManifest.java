@@ -0,0 +1,119 @@
+package domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What the update server offers (manifest.json next to the data files), e.g.
+ *
+ *   {"version": "12",
+ *    "files":  [ {"name": "book.json", "size": 80120, "sha256": "..."}, ... ],
+ *    "deltas": [ {"from": "11", "to": "12", "name": "deltas/11.json", "size": 912, "sha256": "..."} ]}
+ *
+ * Files are the complete data set of this version. Deltas are CatalogDelta JSON files
+ * that turn the catalog of version 'from' into version 'to', so a client that is only a
+ * few versions behind downloads a handful of books instead of the whole catalog and index.
+ * The manifest of the installed version is kept in AppData to know what is on disk.
+ */
+@Getter
+@Setter
+public class UpdateManifest {
+    private String version;
+    private List<FileEntry> files = new ArrayList<>();
+    private List<DeltaEntry> deltas = new ArrayList<>();
+    // Only in the installed copy: the AppData file the index was saved as (see IndexLoader)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String indexFile;
+
+    public UpdateManifest() {}
+
+    @Getter
+    @Setter
+    public static class FileEntry {
+        private String name;
+        private long size;
+        private String sha256;
+
+        public FileEntry() {}
+
+        /**
+         * Describes a local file as it would be listed under the given name.
+         */
+        public static FileEntry of(String name, File file) throws IOException {
+            FileEntry entry = new FileEntry();
+            entry.setName(name);
+            entry.setSize(file.length());
+            try (InputStream in = new FileInputStream(file)) {
+                entry.setSha256(sha256(in));
+            }
+            return entry;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class DeltaEntry extends FileEntry {
+        private String from;
+        private String to;
+
+        public DeltaEntry() {}
+    }
+
+    public FileEntry file(String name) {
+        for (FileEntry entry : files) {
+            if (entry.getName().equals(name)) return entry;
+        }
+        return null;
+    }
+
+    /**
+     * The deltas that lead from 'installedVersion' to this version, in the order they apply,
+     * or null if there is no such chain (then the full files have to be downloaded).
+     */
+    public List<DeltaEntry> deltaChain(String installedVersion) {
+        List<DeltaEntry> chain = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        String current = installedVersion;
+        while (!version.equals(current)) {
+            if (!visited.add(current)) return null; // a cycle in a hand-written manifest
+            DeltaEntry next = null;
+            for (DeltaEntry delta : deltas) {
+                if (delta.getFrom().equals(current)) next = delta;
+            }
+            if (next == null) return null;
+            chain.add(next);
+            current = next.getTo();
+        }
+        return chain;
+    }
+
+    /**
+     * Lower-case hex SHA-256 of everything the stream still has.
+     */
+    public static String sha256(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM ships SHA-256
+        }
+        byte[] buffer = new byte[64 * 1024];
+        for (int n; (n = in.read(buffer)) > 0; ) digest.update(buffer, 0, n);
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+}
@@ -1,12 +1,51 @@
 package features.recommendation;
 
 import domain.Book;
+import utils.LruCache;
+
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
+/**
+ * Book similarity graph over book ids. Every book keeps only its best
+ * {@code maxNeighbors} neighbors, stored as CSR arrays (one offsets array into flat
+ * neighbor / score arrays), so memory grows with n * K rather than with the number of
+ * similar pairs, and a book's neighbors are found by its id in O(1).
+ *
+ * Build it once with {@link #buildGraph} (or load the copy precomputed by IndexerMain
+ * with {@link GraphStore}) before handing it to other threads; after that it is only
+ * read, and recommendations can be computed from many threads at once. Blended scores
+ * and recent recommendations are cached until a different popularity map is passed.
+ */
 public class Graph {
 
-    public final Map<String, Map<String, Double>> adjList = new HashMap<>();
-    public final Map<String, Integer> titleToId = new HashMap<>();
+    public static final int DEFAULT_MAX_NEIGHBORS = 32;
+
+    final int maxNeighbors;
+    int[] bookIds = new int[0];   // node -> book id, in catalog order
+    int[] offsets = {0};          // node i's neighbors are [offsets[i], offsets[i + 1]), best first
+    int[] neighbors = new int[0]; // book ids
+    float[] scores = new float[0];
+    private int[] nodeOfBook = new int[0]; // book id -> node, -1 for books not in the graph
+
+    // Recommendations of recently viewed books, per popularity map; see Blend
+    private static final int RECOMMENDATION_CACHE_SIZE = 1024;
+    private volatile Blend blend;
+
+    public Graph() {
+        this(DEFAULT_MAX_NEIGHBORS);
+    }
+
+    public Graph(int maxNeighbors) {
+        this.maxNeighbors = Math.max(1, maxNeighbors);
+    }
+
+    // Used by GraphStore for a graph read from disk
+    Graph(int maxNeighbors, int[] bookIds, int[] offsets, int[] neighbors, float[] scores) {
+        this(maxNeighbors);
+        setArrays(bookIds, offsets, neighbors, scores);
+    }
 
     // Optional synonym map for languages/tags
     private static final Map<String, String> SYNONYM_MAP = Map.of(
@@ -20,7 +59,7 @@ public class Graph {
     );
 
     // Normalize string: trim, lower-case, and apply synonyms
-    private String normalize(String s) {
+    String normalize(String s) {
         if (s == null) return "";
         s = s.trim().toLowerCase();
         return SYNONYM_MAP.getOrDefault(s, s);
@@ -43,44 +82,165 @@ public class Graph {
 
     // Build graph using similarity scores
     public void buildGraph(List<Book> books) {
+        buildGraph(books, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Scores only the pairs that share an author, a programming language or a normalized
+     * tag: any other pair gets at most 0.2 (category alone), under the 0.3 threshold, so
+     * no edge is lost. Candidates come from an inverted index of those attributes and are
+     * scored in parallel on the given pool, every book keeping its best maxNeighbors.
+     */
+    public void buildGraph(List<Book> books, ForkJoinPool pool) {
         if (books == null) return;
 
-        List<String> normalizedTitles = new ArrayList<>();
+        // 1. Nodes: titled books, one per id (the last copy wins, as in the book map)
+        Map<Integer, Book> byId = new LinkedHashMap<>();
         for (Book b : books) {
-            if (b == null || b.getTitle() == null) {
-                normalizedTitles.add(null);
-            } else {
-                String norm = normalize(b.getTitle());
-                normalizedTitles.add(norm);
-                adjList.putIfAbsent(norm, new HashMap<>());
-                titleToId.put(norm, b.getBookId());
+            if (b == null || b.getBookId() < 0 || normalize(b.getTitle()).isBlank()) continue;
+            byId.put(b.getBookId(), b);
+        }
+        List<Book> nodes = new ArrayList<>(byId.values());
+        int n = nodes.size();
+
+        // 2. Tags normalized once per book, and the nodes of every blocking key in catalog order
+        List<Set<String>> tagSets = new ArrayList<>(n);
+        Map<String, List<Integer>> blocks = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Set<String> tags = normalizeTags(nodes.get(i).getTag());
+            tagSets.add(tags);
+            for (String key : blockingKeys(nodes.get(i), tags)) blocks.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+
+        // 3. Score every book against the books it shares a key with, keep the best
+        int[][] rowNeighbors = new int[n][];
+        float[][] rowScores = new float[n][];
+        pool.submit(() -> IntStream.range(0, n).parallel().forEach(i -> {
+            Book b1 = nodes.get(i);
+            int[] candidates = candidatesOf(i, blockingKeys(b1, tagSets.get(i)), blocks);
+            long[] ranked = new long[candidates.length];
+            int count = 0;
+            for (int j : candidates) {
+                double score = similarity(b1, tagSets.get(i), nodes.get(j), tagSets.get(j));
+                if (score > 0.0) ranked[count++] = rankKey((float) score, j);
             }
+            Arrays.sort(ranked, 0, count);
+
+            int keep = Math.min(count, maxNeighbors);
+            rowNeighbors[i] = new int[keep];
+            rowScores[i] = new float[keep];
+            for (int k = 0; k < keep; k++) {
+                long key = ranked[count - 1 - k];
+                rowNeighbors[i][k] = nodes.get(rankedNode(key)).getBookId();
+                rowScores[i][k] = rankedScore(key);
+            }
+        })).join();
+
+        // 4. Flatten the rows into CSR arrays
+        int[] ids = new int[n];
+        int[] rowOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            ids[i] = nodes.get(i).getBookId();
+            rowOffsets[i + 1] = rowOffsets[i] + rowNeighbors[i].length;
         }
+        int[] flatNeighbors = new int[rowOffsets[n]];
+        float[] flatScores = new float[rowOffsets[n]];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(rowNeighbors[i], 0, flatNeighbors, rowOffsets[i], rowNeighbors[i].length);
+            System.arraycopy(rowScores[i], 0, flatScores, rowOffsets[i], rowScores[i].length);
+        }
+        setArrays(ids, rowOffsets, flatNeighbors, flatScores);
+    }
 
-        for (int i = 0; i < books.size(); i++) {
-            Book b1 = books.get(i);
-            String t1 = normalizedTitles.get(i);
-            if (t1 == null || t1.isBlank()) continue;
+    // Higher score first, then earlier in the catalog: positive float bits sort like the floats
+    private static long rankKey(float score, int node) {
+        return ((long) Float.floatToIntBits(score) << 32) | (Integer.MAX_VALUE - node);
+    }
 
-            for (int j = i + 1; j < books.size(); j++) {
-                Book b2 = books.get(j);
-                String t2 = normalizedTitles.get(j);
-                if (t2 == null || t2.isBlank()) continue;
+    private static int rankedNode(long key) {
+        return Integer.MAX_VALUE - (int) key;
+    }
 
-                double score = calculateSimilarityScore(b1, b2);
-                if (score <= 0.0) continue;
+    private static float rankedScore(long key) {
+        return Float.intBitsToFloat((int) (key >>> 32));
+    }
 
-                // Add edges both ways; keep the highest score
-                adjList.get(t1).merge(t2, score, Math::max);
-                adjList.get(t2).merge(t1, score, Math::max);
+    // Author, language and tags a similar book must share at least one of
+    private List<String> blockingKeys(Book b, Set<String> tags) {
+        List<String> keys = new ArrayList<>(tags.size() + 2);
+        if (b.getAuthor() != null) keys.add("author:" + caseKey(b.getAuthor()));
+        if (b.getProgLang() != null) keys.add("lang:" + caseKey(b.getProgLang()));
+        for (String tag : tags) keys.add("tag:" + tag);
+        return keys;
+    }
+
+    // Equal exactly when equalsIgnoreCase says so, which compares the upper- and lower-cased chars
+    private static String caseKey(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        return new String(chars);
+    }
+
+    // Nodes other than i that share one of the keys, ascending and without duplicates
+    private static int[] candidatesOf(int i, List<String> keys, Map<String, List<Integer>> blocks) {
+        int size = 0;
+        int[] candidates = new int[16];
+        for (String key : keys) {
+            for (int j : blocks.get(key)) {
+                if (size == candidates.length) candidates = Arrays.copyOf(candidates, size * 2);
+                candidates[size++] = j;
             }
         }
+        Arrays.sort(candidates, 0, size);
+        int unique = 0;
+        for (int k = 0; k < size; k++) {
+            if (candidates[k] == i || (unique > 0 && candidates[k] == candidates[unique - 1])) continue;
+            candidates[unique++] = candidates[k];
+        }
+        return Arrays.copyOf(candidates, unique);
+    }
+
+    private void setArrays(int[] bookIds, int[] offsets, int[] neighbors, float[] scores) {
+        int maxId = -1;
+        for (int id : bookIds) maxId = Math.max(maxId, id);
+        int[] nodeOf = new int[maxId + 1];
+        Arrays.fill(nodeOf, -1);
+        for (int node = 0; node < bookIds.length; node++) nodeOf[bookIds[node]] = node;
+
+        this.bookIds = bookIds;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.scores = scores;
+        this.nodeOfBook = nodeOf;
+    }
+
+    int nodeOf(int bookId) {
+        return bookId >= 0 && bookId < nodeOfBook.length ? nodeOfBook[bookId] : -1;
+    }
+
+    // Number of books in the graph
+    public int size() {
+        return bookIds.length;
+    }
+
+    public int edgeCount() {
+        return neighbors.length;
+    }
+
+    // Heap held by the arrays
+    public long estimatedBytes() {
+        return (long) Integer.BYTES * (bookIds.length + offsets.length + neighbors.length + nodeOfBook.length)
+                + (long) Float.BYTES * scores.length;
     }
 
     // Compute similarity score between two books
     public double calculateSimilarityScore(Book b1, Book b2) {
         if (b1 == null || b2 == null) return 0.0;
+        return similarity(b1, normalizeTags(b1.getTag()), b2, normalizeTags(b2.getTag()));
+    }
 
+    // Same score, with both books' tags already normalized
+    private double similarity(Book b1, Set<String> tags1, Book b2, Set<String> tags2) {
         double score = 0.0;
 
         // Author match (strong)
@@ -89,15 +249,14 @@ public class Graph {
         // Programming language match (high)
         if (equalsIgnoreCase(b1.getProgLang(), b2.getProgLang())) score += 0.9;
 
-        // Tags overlap (moderate)
-        Set<String> tags1 = normalizeTags(b1.getTag());
-        Set<String> tags2 = normalizeTags(b2.getTag());
-        if (!tags1.isEmpty() || !tags2.isEmpty()) {
-            Set<String> intersection = new HashSet<>(tags1);
-            intersection.retainAll(tags2);
-            Set<String> union = new HashSet<>(tags1);
-            union.addAll(tags2);
-            if (!union.isEmpty()) score += (intersection.size() / (double) union.size()) * 0.5;
+        // Tags overlap (moderate): Jaccard similarity
+        int union = tags1.size() + tags2.size();
+        if (union > 0) {
+            Set<String> smaller = tags1.size() <= tags2.size() ? tags1 : tags2;
+            Set<String> larger = smaller == tags1 ? tags2 : tags1;
+            int intersection = 0;
+            for (String tag : smaller) if (larger.contains(tag)) intersection++;
+            score += (intersection / (double) (union - intersection)) * 0.5;
         }
 
         // Category match (weak)
@@ -113,32 +272,110 @@ public class Graph {
         return a != null && b != null && a.equalsIgnoreCase(b);
     }
 
-    // Popularity-aware recommendations
-    public List<String> recommendPopularBooks(String bookTitle, int limit, Map<Integer, Double> popularityMap) {
-        String key = normalize(bookTitle);
-        Map<String, Double> relatedBooks = adjList.getOrDefault(key, Collections.emptyMap());
-        List<String> result = new ArrayList<>(relatedBooks.keySet());
+    // Popularity-aware recommendations: ids of the books most related to the given one
+    public List<Integer> recommendPopularBooks(int bookId, int limit, Map<Integer, Double> popularityMap) {
+        int node = nodeOf(bookId);
+        if (node < 0 || limit <= 0) return Collections.emptyList();
+
+        Blend blend = blendFor(popularityMap);
+        long key = ((long) bookId << 32) | limit;
+        List<Integer> cached = blend.recommendations.get(key);
+        if (cached != null) return cached;
+
+        List<Integer> result = Collections.unmodifiableList(topBlended(node, limit, blend.scores));
+        blend.recommendations.put(key, result);
+        return result;
+    }
+
+    /**
+     * Blended scores of all edges for one popularity map, and the recommendations made with
+     * them. ReRanker's map is fixed for the life of an EngineSnapshot, and a reload builds a
+     * new snapshot with its own Graph, so one Blend normally lasts as long as the Graph. A
+     * caller passing a different map still gets a fresh Blend instead of stale scores.
+     */
+    private static final class Blend {
+        final Map<Integer, Double> popularity;
+        final double[] scores;
+        final LruCache<Long, List<Integer>> recommendations = new LruCache<>(RECOMMENDATION_CACHE_SIZE);
+
+        Blend(Map<Integer, Double> popularity, double[] scores) {
+            this.popularity = popularity;
+            this.scores = scores;
+        }
+    }
+
+    private Blend blendFor(Map<Integer, Double> popularityMap) {
+        Blend current = blend;
+        if (current != null && current.popularity == popularityMap) return current;
+        synchronized (this) {
+            if (blend == null || blend.popularity != popularityMap) {
+                final double ALPHA = 0.7; // 70% relevance, 30% popularity
 
-        final double ALPHA = 0.7; // 70% relevance, 30% popularity
+                double[] blended = new double[scores.length];
+                for (int e = 0; e < scores.length; e++) {
+                    double pop = popularityMap != null ? popularityMap.getOrDefault(neighbors[e], 0.0) : 0.0;
+                    blended[e] = ALPHA * scores[e] + (1 - ALPHA) * pop;
+                }
+                blend = new Blend(popularityMap, blended);
+            }
+            return blend;
+        }
+    }
 
-        result.sort((a, b) -> {
-            double relA = relatedBooks.getOrDefault(a, 0.0);
-            double relB = relatedBooks.getOrDefault(b, 0.0);
+    // The node's 'limit' best neighbors by blended score, kept in a bounded min-heap of edge positions
+    private List<Integer> topBlended(int node, int limit, double[] blended) {
+        int from = offsets[node];
+        int to = offsets[node + 1];
+        int[] heap = new int[Math.min(limit, to - from)];
+        int size = 0;
+        for (int e = from; e < to; e++) {
+            if (size < heap.length) {
+                heap[size] = e;
+                siftUp(heap, size++, blended);
+            } else if (better(e, heap[0], blended)) {
+                heap[0] = e;
+                siftDown(heap, 0, size, blended);
+            }
+        }
 
-            double popA = popularityMap != null
-                    ? popularityMap.getOrDefault(titleToId.getOrDefault(a, -1), 0.0)
-                    : 0.0;
+        // Take the worst off the top until the heap is empty, filling the result from the back
+        Integer[] result = new Integer[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = neighbors[heap[0]];
+            heap[0] = heap[i];
+            siftDown(heap, 0, i, blended);
+        }
+        return Arrays.asList(result);
+    }
 
-            double popB = popularityMap != null
-                    ? popularityMap.getOrDefault(titleToId.getOrDefault(b, -1), 0.0)
-                    : 0.0;
+    // Higher blended score first; on a tie the edge listed first (the more similar book)
+    private static boolean better(int a, int b, double[] blended) {
+        return blended[a] > blended[b] || (blended[a] == blended[b] && a < b);
+    }
 
-            double scoreA = ALPHA * relA + (1 - ALPHA) * popA;
-            double scoreB = ALPHA * relB + (1 - ALPHA) * popB;
+    private static void siftUp(int[] heap, int i, double[] blended) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(heap[parent], heap[i], blended)) return;
+            swap(heap, parent, i);
+            i = parent;
+        }
+    }
 
-            return Double.compare(scoreB, scoreA);
-        });
+    private static void siftDown(int[] heap, int i, int size, double[] blended) {
+        while (true) {
+            int worst = 2 * i + 1;
+            if (worst >= size) return;
+            if (worst + 1 < size && better(heap[worst], heap[worst + 1], blended)) worst++;
+            if (!better(heap[i], heap[worst], blended)) return;
+            swap(heap, i, worst);
+            i = worst;
+        }
+    }
 
-        return result.subList(0, Math.min(limit, result.size()));
+    private static void swap(int[] heap, int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,178 @@
+package features.recommendation;
+
+import domain.Book;
+import utils.StorageUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * The recommendation graph as a file (graph.bin), so the app does not compare every
+ * pair of books at startup. IndexerMain writes it next to the index.
+ *
+ * <pre>
+ * Header    : magic, version, catalog fingerprint (long), maxNeighbors, nodeCount, edgeCount
+ * Nodes     : nodeCount x bookId, in catalog order
+ * Offsets   : nodeCount + 1 ints, node i's edges are [offsets[i], offsets[i + 1])
+ * Neighbors : edgeCount x bookId, best first
+ * Scores    : edgeCount x float similarity score
+ * </pre>
+ *
+ * These are the arrays of {@link Graph} as they are, so loading is a plain copy. The
+ * fingerprint is a hash of every book attribute the scores are computed from, so a
+ * file built from another catalog (e.g. after a delta update) is detected as stale and
+ * rebuilt. Bump VERSION when the layout or the scoring in {@link Graph} changes.
+ */
+public final class GraphStore {
+
+    public static final String GRAPH_FILE_NAME = "graph.bin";
+
+    private static final int MAGIC = 0x44534752; // "DSGR"
+    private static final int VERSION = 2;
+
+    private GraphStore() {}
+
+    /**
+     * The graph for these books: the AppData copy (downloaded or cached) if it matches them,
+     * else the bundled one, else built from scratch and cached in AppData for the next start.
+     */
+    public static Graph loadOrBuild(List<Book> books, String resourcePath) {
+        long fingerprint = fingerprint(books);
+        int maxNeighbors = Graph.DEFAULT_MAX_NEIGHBORS;
+
+        // 1️⃣ AppData (an update or an earlier rebuild)
+        File localFile = new File(StorageUtils.getAppDataDir(), GRAPH_FILE_NAME);
+        if (localFile.exists()) {
+            try (InputStream in = new FileInputStream(localFile)) {
+                Graph graph = read(in, fingerprint, maxNeighbors);
+                if (graph != null) {
+                    System.out.println("📂 Loaded recommendation graph from local data (" + graph.size() + " books).");
+                    return graph;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("⚠️ Ignoring unreadable " + localFile + ": " + e);
+            }
+        }
+
+        // 2️⃣ Factory default
+        try (InputStream in = GraphStore.class.getResourceAsStream(resourcePath)) {
+            if (in != null) {
+                Graph graph = read(in, fingerprint, maxNeighbors);
+                if (graph != null) {
+                    System.out.println("📦 Loaded precomputed recommendation graph (" + graph.size() + " books).");
+                    return graph;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ Ignoring unreadable " + resourcePath + ": " + e);
+        }
+
+        // 3️⃣ Missing or stale: build it once, then keep it
+        System.out.println("🕸️ No up-to-date recommendation graph found, building it...");
+        Graph graph = new Graph(maxNeighbors);
+        graph.buildGraph(books);
+        System.out.println("Graph built with " + graph.size() + " books and " + graph.edgeCount() + " edges.");
+        try {
+            File tmp = new File(localFile.getPath() + ".tmp");
+            write(graph, books, tmp);
+            Files.move(tmp.toPath(), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not cache the recommendation graph: " + e.getMessage());
+        }
+        return graph;
+    }
+
+    /**
+     * Writes a graph built from these books.
+     */
+    public static void write(Graph graph, List<Book> books, File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint(books));
+            out.writeInt(graph.maxNeighbors);
+            out.writeInt(graph.bookIds.length);
+            out.writeInt(graph.neighbors.length);
+            for (int id : graph.bookIds) out.writeInt(id);
+            for (int offset : graph.offsets) out.writeInt(offset);
+            for (int id : graph.neighbors) out.writeInt(id);
+            for (float score : graph.scores) out.writeFloat(score);
+        }
+    }
+
+    /**
+     * Reads a graph file, or returns null if it was built from a different catalog or format.
+     */
+    public static Graph read(InputStream stream, List<Book> books) throws IOException {
+        return read(stream, fingerprint(books), Graph.DEFAULT_MAX_NEIGHBORS);
+    }
+
+    private static Graph read(InputStream stream, long fingerprint, int maxNeighbors) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(stream.readAllBytes()); // big-endian, as DataOutputStream wrote it
+        if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != fingerprint) return null;
+        if (in.getInt() != maxNeighbors) return null;
+
+        int nodeCount = in.getInt();
+        int edgeCount = in.getInt();
+        int[] bookIds = readInts(in, nodeCount);
+        int[] offsets = readInts(in, nodeCount + 1);
+        int[] neighbors = readInts(in, edgeCount);
+        float[] scores = new float[edgeCount];
+        in.asFloatBuffer().get(scores);
+        return new Graph(maxNeighbors, bookIds, offsets, neighbors, scores);
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Hash of the books in order, over the attributes that decide the graph.
+     */
+    public static long fingerprint(List<Book> books) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM ships SHA-256
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Book b : books) {
+            sb.setLength(0);
+            if (b != null) {
+                sb.append(b.getBookId()).append('\u0000');
+                field(sb, b.getTitle());
+                field(sb, b.getAuthor());
+                field(sb, b.getProgLang());
+                field(sb, b.getCategory());
+                if (b.getTag() != null) for (String tag : b.getTag()) field(sb, tag);
+            }
+            sb.append('\n');
+            digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        long hash = 0;
+        byte[] bytes = digest.digest();
+        for (int i = 0; i < Long.BYTES; i++) hash = (hash << 8) | (bytes[i] & 0xFF);
+        return hash;
+    }
+
+    private static void field(StringBuilder sb, String value) {
+        sb.append(value == null ? "\u0001" : value).append('\u0000');
+    }
+}
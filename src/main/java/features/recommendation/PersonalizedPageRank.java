@@ -0,0 +1,175 @@
+package features.recommendation;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * "Related books" by personalized PageRank (random walk with restart) over the similarity
+ * graph: a walker starts at the seed books, follows edges in proportion to their scores
+ * and jumps back to a seed with probability {@code restart} at every step. Books reached
+ * over many strong paths rank high even when they are not direct neighbors of a seed.
+ *
+ * A request is a power iteration r = restart * seeds + (1 - restart) * P^T r over the
+ * sparse graph, stopped after maxIterations or once the L1 change drops below tolerance.
+ * Each step pulls a book's rank from its incoming edges, so books are updated in parallel
+ * without shared writes. Results for the most viewed books can be precomputed.
+ *
+ * Immutable after construction apart from the precomputed results, which are safe to
+ * read and add from many threads.
+ */
+public class PersonalizedPageRank {
+
+    public static final double DEFAULT_RESTART = 0.15;
+    public static final int DEFAULT_MAX_ITERATIONS = 50;
+    public static final double DEFAULT_TOLERANCE = 1e-6;
+    // Below this many books a step is too short to be worth splitting across threads
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    private final Graph graph;
+    private final ForkJoinPool pool; // null: always iterate on the calling thread
+    private final double restart;
+    private final int maxIterations;
+    private final double tolerance;
+
+    // Incoming edges as CSR: node j's are [inOffsets[j], inOffsets[j + 1]), from node inSources[e]
+    // with transition probability inWeights[e] (the edge's share of its source's total score)
+    private final int[] inOffsets;
+    private final int[] inSources;
+    private final double[] inWeights;
+    private final boolean[] dangling; // no outgoing edges: the walker restarts from there
+
+    private final Map<Integer, List<Integer>> precomputed = new ConcurrentHashMap<>();
+    private volatile int precomputedLimit;
+
+    public PersonalizedPageRank(Graph graph, ForkJoinPool pool) {
+        this(graph, pool, DEFAULT_RESTART, DEFAULT_MAX_ITERATIONS, DEFAULT_TOLERANCE);
+    }
+
+    public PersonalizedPageRank(Graph graph, ForkJoinPool pool, double restart, int maxIterations, double tolerance) {
+        this.graph = graph;
+        this.pool = pool;
+        this.restart = restart;
+        this.maxIterations = Math.max(1, maxIterations);
+        this.tolerance = tolerance;
+
+        // 1. Total outgoing score per node
+        int n = graph.size();
+        double[] outWeight = new double[n];
+        dangling = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            for (int e = graph.offsets[i]; e < graph.offsets[i + 1]; e++) outWeight[i] += graph.scores[e];
+            dangling[i] = outWeight[i] == 0.0;
+        }
+
+        // 2. Transpose the edges, counting first so every node's block is filled in place
+        inOffsets = new int[n + 1];
+        for (int e = 0; e < graph.neighbors.length; e++) inOffsets[graph.nodeOf(graph.neighbors[e]) + 1]++;
+        for (int j = 0; j < n; j++) inOffsets[j + 1] += inOffsets[j];
+        inSources = new int[graph.neighbors.length];
+        inWeights = new double[graph.neighbors.length];
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        for (int i = 0; i < n; i++) {
+            for (int e = graph.offsets[i]; e < graph.offsets[i + 1]; e++) {
+                int slot = fill[graph.nodeOf(graph.neighbors[e])]++;
+                inSources[slot] = i;
+                inWeights[slot] = graph.scores[e] / outWeight[i];
+            }
+        }
+    }
+
+    /**
+     * Books related to one book, best first (precomputed if it is among the most viewed).
+     */
+    public List<Integer> recommend(int bookId, int limit) {
+        List<Integer> cached = precomputed.get(bookId);
+        if (cached != null && limit <= precomputedLimit) return cached.subList(0, Math.min(limit, cached.size()));
+        return recommend(Collections.singletonList(bookId), limit);
+    }
+
+    /**
+     * Books related to a set of books (e.g. the ones clicked this session), best first.
+     * The seeds themselves are left out; unknown ids are ignored.
+     */
+    public List<Integer> recommend(Collection<Integer> seedBookIds, int limit) {
+        Set<Integer> seeds = new LinkedHashSet<>();
+        for (Integer id : seedBookIds) {
+            int node = id == null ? -1 : graph.nodeOf(id);
+            if (node >= 0) seeds.add(node);
+        }
+        if (seeds.isEmpty() || limit <= 0) return Collections.emptyList();
+        return topRanked(rank(seeds), seeds, limit);
+    }
+
+    /**
+     * Computes and keeps the best 'limit' recommendations of these books, so asking for
+     * them is a lookup. Meant to be called once, right after construction.
+     */
+    public void precompute(List<Integer> bookIds, int limit) {
+        precomputedLimit = limit;
+        for (int bookId : bookIds) {
+            if (graph.nodeOf(bookId) < 0) continue;
+            precomputed.put(bookId, Collections.unmodifiableList(recommend(Collections.singletonList(bookId), limit)));
+        }
+    }
+
+    public int getPrecomputedCount() {
+        return precomputed.size();
+    }
+
+    // Power iteration from the seed nodes; returns the rank of every node
+    private double[] rank(Set<Integer> seeds) {
+        int n = graph.size();
+        double[] restartVector = new double[n];
+        for (int seed : seeds) restartVector[seed] = 1.0 / seeds.size();
+
+        double[] rank = restartVector.clone();
+        double[] next = new double[n];
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            // 1. Mass sitting on dangling nodes goes back to the seeds with the restart jump
+            double danglingMass = 0.0;
+            for (int i = 0; i < n; i++) if (dangling[i]) danglingMass += rank[i];
+            double jump = restart + (1 - restart) * danglingMass;
+
+            // 2. Every node pulls from its incoming edges; nodes only write their own slot
+            double[] current = rank;
+            double[] target = next;
+            if (pool != null && n >= PARALLEL_THRESHOLD) {
+                pool.submit(() -> IntStream.range(0, n).parallel()
+                        .forEach(j -> target[j] = step(j, current, restartVector, jump))).join();
+            } else {
+                for (int j = 0; j < n; j++) target[j] = step(j, current, restartVector, jump);
+            }
+
+            // 3. Summed in order, so the stopping point never depends on the thread split
+            double change = 0.0;
+            for (int j = 0; j < n; j++) change += Math.abs(next[j] - rank[j]);
+            next = rank;
+            rank = target;
+            if (change < tolerance) break;
+        }
+        return rank;
+    }
+
+    private double step(int j, double[] rank, double[] restartVector, double jump) {
+        double sum = 0.0;
+        for (int e = inOffsets[j]; e < inOffsets[j + 1]; e++) sum += rank[inSources[e]] * inWeights[e];
+        return (1 - restart) * sum + jump * restartVector[j];
+    }
+
+    // The 'limit' best ranked nodes other than the seeds, as book ids; ties go to the earlier book
+    private List<Integer> topRanked(double[] rank, Set<Integer> seeds, int limit) {
+        Comparator<Integer> worstFirst = (a, b) -> rank[a] != rank[b] ? Double.compare(rank[a], rank[b]) : Integer.compare(b, a);
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, worstFirst);
+        for (int node = 0; node < rank.length; node++) {
+            if (rank[node] <= 0.0 || seeds.contains(node)) continue;
+            heap.add(node);
+            if (heap.size() > limit) heap.poll();
+        }
+
+        Integer[] result = new Integer[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) result[i] = graph.bookIds[heap.poll()];
+        return Arrays.asList(result);
+    }
+}
@@ -0,0 +1,129 @@
+package features.search;
+
+import domain.BookField;
+import domain.PostingList;
+import storage.IndexSnapshot;
+import storage.IndexSnapshot.Segment;
+import storage.MappedIndex;
+
+import java.util.Map;
+
+/**
+ * BM25F: term frequencies are counted per field (title, author, description,
+ * category, language, tags), length-normalized against that field's average,
+ * weighted, and only then saturated once with k1. A title hit therefore counts
+ * more than a description hit, and a long description no longer drowns the title.
+ *
+ * Per-field frequencies come from the positions: fields are indexed back to back,
+ * so the stored field lengths tell which field every position falls into.
+ */
+public class BM25FSimilarity implements Similarity {
+
+    private static final double[] DEFAULT_WEIGHTS = fieldValues(3.0, 1.5, 1.0, 1.0, 1.0, 2.0);
+    private static final double[] DEFAULT_B = fieldValues(0.5, 0.3, 0.75, 0.3, 0.3, 0.5);
+
+    private final double k1;
+    private final double[] weights;
+    private final double[] b;
+    private final double maxFieldBoost;
+
+    public BM25FSimilarity() {
+        this(1.2, DEFAULT_WEIGHTS, DEFAULT_B);
+    }
+
+    /**
+     * @param weights boost per BookField (by ordinal)
+     * @param b       length normalization per BookField (by ordinal)
+     */
+    public BM25FSimilarity(double k1, double[] weights, double[] b) {
+        if (weights.length != BookField.COUNT || b.length != BookField.COUNT) {
+            throw new IllegalArgumentException("Expected one weight and one b per BookField");
+        }
+        this.k1 = k1;
+        this.weights = weights.clone();
+        this.b = b.clone();
+
+        double boost = 0.0;
+        for (int f = 0; f < BookField.COUNT; f++) {
+            boost = Math.max(boost, b[f] >= 1.0 ? Double.POSITIVE_INFINITY : weights[f] / (1 - b[f]));
+        }
+        this.maxFieldBoost = boost;
+    }
+
+    @Override
+    public boolean isNormalized() {
+        return false;
+    }
+
+    @Override
+    public QueryScorer prepare(IndexSnapshot snapshot, Map<String, Integer> queryTermCounts) {
+        double[] averageLengths = new double[BookField.COUNT];
+        for (int f = 0; f < averageLengths.length; f++) averageLengths[f] = snapshot.averageFieldLength(f);
+
+        return new QueryScorer() {
+            @Override
+            public TermScorer termScorer(String term, Segment segment, int termId) {
+                double weight = queryTermCounts.get(term) * BM25Similarity.idf(snapshot, term) * (k1 + 1);
+                MappedIndex index = segment.getIndex();
+                return (postings, i) -> {
+                    double tf = fieldWeightedTf(index, postings, i, averageLengths);
+                    return (float) (weight * tf / (tf + k1));
+                };
+            }
+
+            @Override
+            public double maxScore(String term, Segment segment, int termId) {
+                // Each field's length normalization is at least (1 - b), so the weighted tf is
+                // at most maxFreq x the best weight / (1 - b) of any field
+                double weight = queryTermCounts.get(term) * BM25Similarity.idf(snapshot, term) * (k1 + 1);
+                double tf = segment.getIndex().maxFreq(termId) * maxFieldBoost;
+                return Double.isInfinite(tf) ? weight : weight * tf / (tf + k1);
+            }
+
+            @Override
+            public double finish(Segment segment, int docId, float accumulated) {
+                return accumulated;
+            }
+        };
+    }
+
+    private double fieldWeightedTf(MappedIndex index, PostingList postings, int i, double[] averageLengths) {
+        int docId = postings.docId(i);
+        int freq = postings.freq(i);
+        double tf = 0.0;
+        int field = 0;
+        int fieldStart = 0;
+        int fieldLength = index.fieldLength(docId, 0);
+        int j = 0;
+        // Positions are ascending, so fields and positions are walked together once
+        while (j < freq) {
+            int count = 0;
+            while (j < freq && (field == BookField.COUNT - 1 || postings.position(i, j) < fieldStart + fieldLength)) {
+                count++;
+                j++;
+            }
+            if (count > 0) {
+                double lengthRatio = averageLengths[field] == 0 ? 1.0 : fieldLength / averageLengths[field];
+                tf += weights[field] * count / (1 - b[field] + b[field] * lengthRatio);
+            }
+            if (field < BookField.COUNT - 1) {
+                fieldStart += fieldLength;
+                field++;
+                fieldLength = index.fieldLength(docId, field);
+            }
+        }
+        return tf;
+    }
+
+    private static double[] fieldValues(double title, double author, double description,
+                                        double category, double language, double tags) {
+        double[] values = new double[BookField.COUNT];
+        values[BookField.TITLE.ordinal()] = title;
+        values[BookField.AUTHOR.ordinal()] = author;
+        values[BookField.DESCRIPTION.ordinal()] = description;
+        values[BookField.CATEGORY.ordinal()] = category;
+        values[BookField.LANGUAGE.ordinal()] = language;
+        values[BookField.TAGS.ordinal()] = tags;
+        return values;
+    }
+}
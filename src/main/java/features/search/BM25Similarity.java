@@ -0,0 +1,73 @@
+package features.search;
+
+import storage.IndexSnapshot;
+import storage.IndexSnapshot.Segment;
+import storage.MappedIndex;
+
+import java.util.Map;
+
+/**
+ * Okapi BM25 over the whole document (all fields as one bag of words).
+ * Needs only term frequencies and document lengths, both already in the index.
+ */
+public class BM25Similarity implements Similarity {
+
+    private final double k1;
+    private final double b;
+
+    public BM25Similarity() {
+        this(1.2, 0.75);
+    }
+
+    public BM25Similarity(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    @Override
+    public boolean isNormalized() {
+        return false;
+    }
+
+    @Override
+    public QueryScorer prepare(IndexSnapshot snapshot, Map<String, Integer> queryTermCounts) {
+        double averageDocLength = snapshot.getAverageDocLength();
+
+        return new QueryScorer() {
+            @Override
+            public TermScorer termScorer(String term, Segment segment, int termId) {
+                double weight = queryTermCounts.get(term) * idf(snapshot, term) * (k1 + 1);
+                MappedIndex index = segment.getIndex();
+                return (postings, i) -> {
+                    int tf = postings.freq(i);
+                    double lengthRatio = averageDocLength == 0 ? 1.0 : index.docLength(postings.docId(i)) / averageDocLength;
+                    return (float) (weight * tf / (tf + k1 * (1 - b + b * lengthRatio)));
+                };
+            }
+
+            @Override
+            public double maxScore(String term, Segment segment, int termId) {
+                // Increasing in tf and decreasing in length, so the highest tf in the shortest doc bounds it
+                MappedIndex index = segment.getIndex();
+                double weight = queryTermCounts.get(term) * idf(snapshot, term) * (k1 + 1);
+                int tf = index.maxFreq(termId);
+                double lengthRatio = averageDocLength == 0 ? 1.0 : index.minDocLength(termId) / averageDocLength;
+                return weight * tf / (tf + k1 * (1 - b + b * lengthRatio));
+            }
+
+            @Override
+            public double finish(Segment segment, int docId, float accumulated) {
+                return accumulated;
+            }
+        };
+    }
+
+    /**
+     * BM25 IDF with the +1 inside the log, so it never goes negative for very common terms.
+     */
+    static double idf(IndexSnapshot snapshot, String term) {
+        int df = Math.max(0, snapshot.docFreq(term));
+        int n = snapshot.getLiveDocCount();
+        return Math.log(1 + (n - df + 0.5) / (df + 0.5));
+    }
+}
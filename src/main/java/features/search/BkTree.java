@@ -0,0 +1,79 @@
+package features.search;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * BK-tree: words arranged by edit distance, each child stored under its distance to
+ * the parent. By the triangle inequality, a search for words within r edits of a query
+ * at distance d from a node only descends into children keyed d - r .. d + r, so it
+ * compares against a small part of the vocabulary instead of every word.
+ *
+ * Every word carries the ids it was added with (e.g. the titles containing it).
+ * Built once, then only read; safe to search from many threads.
+ */
+class BkTree {
+
+    private final ToIntBiFunction<String, String> distance;
+    private Node root;
+    private int size;
+
+    BkTree(ToIntBiFunction<String, String> distance) {
+        this.distance = distance;
+    }
+
+    void add(String word, int[] ids) {
+        Node node = new Node(word, ids);
+        size++;
+        if (root == null) {
+            root = node;
+            return;
+        }
+        Node current = root;
+        while (true) {
+            int d = distance.applyAsInt(word, current.word);
+            Node child = current.children.get(d);
+            if (child == null) {
+                current.children.put(d, node);
+                return;
+            }
+            current = child;
+        }
+    }
+
+    /**
+     * Calls back with the ids of every word at most maxDistance edits from the given one.
+     */
+    void search(String word, int maxDistance, Consumer<int[]> matches) {
+        if (root == null) return;
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int d = distance.applyAsInt(word, node.word);
+            if (d <= maxDistance) matches.accept(node.ids);
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                if (Math.abs(child.getKey() - d) <= maxDistance) pending.push(child.getValue());
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static final class Node {
+        final String word;
+        final int[] ids;
+        final Map<Integer, Node> children = new HashMap<>(4);
+
+        Node(String word, int[] ids) {
+            this.word = word;
+            this.ids = ids;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package features.search;
+
+import storage.IndexSnapshot;
+import storage.IndexSnapshot.Segment;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The original DevShelf ranking: cosine similarity between the query's and the
+ * document's (1 + log10 tf) x IDF vectors. Document norms are precomputed in the index.
+ */
+public class CosineSimilarity implements Similarity {
+
+    // 1 + log10(tf) for the small frequencies that make up almost every posting
+    private static final double[] TF_WEIGHTS = new double[64];
+    static {
+        for (int tf = 1; tf < TF_WEIGHTS.length; tf++) TF_WEIGHTS[tf] = 1 + Math.log10(tf);
+    }
+
+    @Override
+    public QueryScorer prepare(IndexSnapshot snapshot, Map<String, Integer> queryTermCounts) {
+        // The query's own TF-IDF vector and its length
+        Map<String, Double> queryVector = new HashMap<>();
+        double sumOfSquares = 0.0;
+        for (Map.Entry<String, Integer> entry : queryTermCounts.entrySet()) {
+            double weight = (1 + Math.log10(entry.getValue())) * snapshot.idf(entry.getKey());
+            queryVector.put(entry.getKey(), weight);
+            sumOfSquares += weight * weight;
+        }
+        double queryNorm = Math.sqrt(sumOfSquares);
+
+        return new QueryScorer() {
+            @Override
+            public TermScorer termScorer(String term, Segment segment, int termId) {
+                double queryWeight = queryVector.get(term);
+                if (queryWeight == 0.0) return null;
+                double idf = segment.getIndex().idf(termId);
+                return (postings, i) -> (float) (queryWeight * tfWeight(postings.freq(i)) * idf);
+            }
+
+            @Override
+            public double maxScore(String term, Segment segment, int termId) {
+                // score = sum(queryWeight / queryNorm * weight / docNorm); the index stores max(weight / docNorm)
+                return queryVector.get(term) / queryNorm * segment.getIndex().maxImpact(termId);
+            }
+
+            @Override
+            public double finish(Segment segment, int docId, float accumulated) {
+                float docNorm = segment.getIndex().norm(docId);
+                if (docNorm == 0f || accumulated <= 0f) return 0.0;
+                return accumulated / (queryNorm * docNorm);
+            }
+        };
+    }
+
+    static double tfWeight(int freq) {
+        return freq < TF_WEIGHTS.length ? TF_WEIGHTS[freq] : 1 + Math.log10(freq);
+    }
+}
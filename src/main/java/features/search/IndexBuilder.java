@@ -1,10 +1,11 @@
 package features.search;
 
 import domain.Book;
-import domain.Posting;
+import domain.BookField;
+import domain.PostingList;
 import lombok.Getter;
 import utils.TextProcessor;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,38 +13,50 @@ import java.util.Map;
 public class IndexBuilder {
 
     @Getter
-    private final Map<String, List<Posting>> invertedIndex;
+    private final Map<String, PostingList> invertedIndex;
+    // docId -> number of tokens in each BookField, used by length-normalized similarities
+    @Getter
+    private final Map<Integer, int[]> fieldLengths;
     private final TextProcessor textProcessor;
 
     public IndexBuilder(TextProcessor textProcessor) {
         this.textProcessor = textProcessor;
         this.invertedIndex = new HashMap<>();
+        this.fieldLengths = new HashMap<>();
     }
 
     public void indexDocument(Book book) {
 
-        String bookData = book.getTitle() + " " +
-                book.getAuthor() + " " +
-                book.getDescription() + " " +
-                book.getCategory() + " " +
-                book.getProgLang() + " " +
-                String.join(" ", book.getTag());
-
-        List<String> stemmedTokens = textProcessor.process(bookData);
-        Map<String, List<Integer>> termPositions = new HashMap<>();
-        for (int pos = 0; pos < stemmedTokens.size(); pos++) {
-            String term = stemmedTokens.get(pos);
-            termPositions.computeIfAbsent(term, k -> new ArrayList<>()).add(pos);
+        // Fields are processed one by one but positions keep counting across them,
+        // exactly as if title, author, description, ... were one concatenated text
+        Map<String, Positions> termPositions = new HashMap<>();
+        int[] lengths = new int[BookField.COUNT];
+        int[] pos = {0};
+        for (BookField field : BookField.values()) {
+            int start = pos[0];
+            textProcessor.forEachTerm(field.textOf(book),
+                    term -> termPositions.computeIfAbsent(term, k -> new Positions()).add(pos[0]++));
+            lengths[field.ordinal()] = pos[0] - start;
         }
-        for (Map.Entry<String, List<Integer>> entry : termPositions.entrySet()) {
-            String term = entry.getKey();
-            List<Integer> positions = entry.getValue();
-
-            Posting posting = new Posting(book.getBookId(), positions.size(), positions);
+        fieldLengths.put(book.getBookId(), lengths);
 
-            invertedIndex.computeIfAbsent(term, k -> new ArrayList<>()).add(posting);
+        for (Map.Entry<String, Positions> entry : termPositions.entrySet()) {
+            Positions positions = entry.getValue();
+            invertedIndex.computeIfAbsent(entry.getKey(), k -> new PostingList())
+                    .add(book.getBookId(), positions.values, positions.size);
         }
 
     }
 
-}
\ No newline at end of file
+    // Growable int[] for one term's positions inside the current document
+    private static final class Positions {
+        int[] values = new int[2];
+        int size;
+
+        void add(int pos) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = pos;
+        }
+    }
+
+}
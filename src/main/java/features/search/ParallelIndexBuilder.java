@@ -0,0 +1,104 @@
+package features.search;
+
+import domain.Book;
+import domain.PostingList;
+import lombok.Getter;
+import utils.TextProcessor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join version of {@link IndexBuilder} for the offline indexer.
+ * The book list is split into shards, every shard is indexed with its own
+ * TextProcessor (the Snowball stemmer is not thread-safe), and the shard
+ * indexes are merged pairwise on the way back up into one term-sorted index.
+ */
+public class ParallelIndexBuilder {
+
+    private static final int DEFAULT_SHARD_SIZE = 32;
+
+    private final Set<String> stopWords;
+    private final ForkJoinPool pool;
+    private final int shardSize;
+    // docId -> per-field token counts of the last build, filled by the shards
+    @Getter
+    private final Map<Integer, int[]> fieldLengths = new ConcurrentHashMap<>();
+
+    public ParallelIndexBuilder(Set<String> stopWords, ForkJoinPool pool) {
+        this(stopWords, pool, DEFAULT_SHARD_SIZE);
+    }
+
+    public ParallelIndexBuilder(Set<String> stopWords, ForkJoinPool pool, int shardSize) {
+        this.stopWords = stopWords;
+        this.pool = pool;
+        this.shardSize = Math.max(1, shardSize);
+    }
+
+    /**
+     * Builds the inverted index of all books. Terms are sorted and every
+     * posting list is ordered by docId, exactly as the binary writer expects.
+     */
+    public Map<String, PostingList> build(List<Book> books) {
+        fieldLengths.clear();
+        TreeMap<String, PostingList> merged = pool.invoke(new ShardTask(books, 0, books.size()));
+        for (PostingList postings : merged.values()) {
+            postings.sortByDocId();
+            postings.trimToSize();
+        }
+        return merged;
+    }
+
+    private class ShardTask extends RecursiveTask<TreeMap<String, PostingList>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Book> books;
+        private final int from;
+        private final int to;
+
+        ShardTask(List<Book> books, int from, int to) {
+            this.books = books;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TreeMap<String, PostingList> compute() {
+            if (to - from <= shardSize) {
+                return indexShard();
+            }
+            int mid = (from + to) >>> 1;
+            ShardTask left = new ShardTask(books, from, mid);
+            ShardTask right = new ShardTask(books, mid, to);
+            left.fork();
+            TreeMap<String, PostingList> rightIndex = right.compute();
+            return merge(left.join(), rightIndex);
+        }
+
+        private TreeMap<String, PostingList> indexShard() {
+            IndexBuilder shardBuilder = new IndexBuilder(new TextProcessor(stopWords));
+            for (int i = from; i < to; i++) {
+                shardBuilder.indexDocument(books.get(i));
+            }
+            fieldLengths.putAll(shardBuilder.getFieldLengths());
+            return new TreeMap<>(shardBuilder.getInvertedIndex());
+        }
+
+        private TreeMap<String, PostingList> merge(TreeMap<String, PostingList> into,
+                                                     TreeMap<String, PostingList> from) {
+            for (Map.Entry<String, PostingList> entry : from.entrySet()) {
+                into.merge(entry.getKey(), entry.getValue(), (a, b) -> {
+                    a.sortByDocId();
+                    b.sortByDocId();
+                    return PostingList.merge(List.of(a, b));
+                });
+            }
+            return into;
+        }
+    }
+}
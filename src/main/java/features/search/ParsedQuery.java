@@ -0,0 +1,214 @@
+package features.search;
+
+import domain.BookField;
+import lombok.Getter;
+import utils.TextProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A raw search box string after parsing and text processing.
+ *
+ * <pre>
+ * python django          plain words are optional: any of them matches (the old bag of words)
+ * +python -django        + makes a word required, - excludes it
+ * python AND django      AND makes both sides required, OR makes both sides optional,
+ * python NOT django      NOT excludes the next word (operators are upper case only)
+ * "clean code"           a phrase: its terms must appear next to each other
+ * author:martin          field scoping (title:, author:, category:, lang:, tag:); also author:"robert martin"
+ * </pre>
+ *
+ * Phrases and field-scoped words are required unless they are negated or joined with OR.
+ * Positions are counted after stop word removal, exactly as at indexing time.
+ * An unterminated quote runs to the end.
+ */
+public final class ParsedQuery {
+
+    public enum Occur { MUST, SHOULD, MUST_NOT }
+
+    private static final Map<String, BookField> FIELD_PREFIXES = Map.of(
+            "title", BookField.TITLE,
+            "author", BookField.AUTHOR,
+            "category", BookField.CATEGORY,
+            "lang", BookField.LANGUAGE,
+            "tag", BookField.TAGS);
+
+    /**
+     * One term or phrase of the query, and whether it is required, optional or excluded.
+     */
+    public static final class Clause {
+        @Getter
+        private final Occur occur;
+        // null means anywhere in the book
+        @Getter
+        private final BookField field;
+        // processed terms; more than one makes this a phrase
+        @Getter
+        private final List<String> terms;
+
+        Clause(Occur occur, BookField field, List<String> terms) {
+            this.occur = occur;
+            this.field = field;
+            this.terms = Collections.unmodifiableList(terms);
+        }
+
+        public boolean isPhrase() {
+            return terms.size() > 1;
+        }
+
+        @Override
+        public String toString() {
+            String prefix = occur == Occur.MUST ? "+" : occur == Occur.MUST_NOT ? "-" : "";
+            String scope = field == null ? "" : field.name().toLowerCase() + ":";
+            return prefix + scope + (isPhrase() ? "\"" + String.join(" ", terms) + "\"" : terms.get(0));
+        }
+    }
+
+    @Getter
+    private final List<Clause> clauses;
+
+    private ParsedQuery(List<Clause> clauses) {
+        this.clauses = Collections.unmodifiableList(clauses);
+    }
+
+    public static ParsedQuery parse(String rawQuery, TextProcessor textProcessor) {
+        List<Clause> clauses = new ArrayList<>();
+        if (rawQuery == null) return new ParsedQuery(clauses);
+
+        // 1. Split into words, phrases and operators
+        List<Token> tokens = tokenize(rawQuery);
+
+        // 2. Decide every word's occur from its prefix and the operators around it
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.operator != null) continue;
+
+            String before = i > 0 ? tokens.get(i - 1).operator : null;
+            String after = i + 1 < tokens.size() ? tokens.get(i + 1).operator : null;
+            Occur occur;
+            if (token.prefix == '-' || "NOT".equals(before)) occur = Occur.MUST_NOT;
+            else if (token.prefix == '+' || "AND".equals(before) || "AND".equals(after)) occur = Occur.MUST;
+            else if ("OR".equals(before) || "OR".equals(after)) occur = Occur.SHOULD;
+            else occur = token.quoted || token.field != null ? Occur.MUST : Occur.SHOULD;
+
+            // 3. Process the text like the indexer did
+            List<String> terms = textProcessor.process(token.text);
+            if (terms.isEmpty()) continue;
+            if (occur == Occur.SHOULD && !token.quoted && token.field == null) {
+                // a plain word that splits into several terms stays a bag of words
+                for (String term : terms) clauses.add(new Clause(occur, null, List.of(term)));
+            } else {
+                clauses.add(new Clause(occur, token.field, terms));
+            }
+        }
+        return new ParsedQuery(clauses);
+    }
+
+    /**
+     * True when nothing could be scored: no terms at all, or only excluded ones.
+     */
+    public boolean isEmpty() {
+        for (Clause clause : clauses) {
+            if (clause.occur != Occur.MUST_NOT) return false;
+        }
+        return true;
+    }
+
+    public boolean hasRequired() {
+        for (Clause clause : clauses) {
+            if (clause.occur == Occur.MUST) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The terms that contribute to the score (everything not excluded), in query order.
+     */
+    public List<String> scoringTerms() {
+        List<String> terms = new ArrayList<>();
+        for (Clause clause : clauses) {
+            if (clause.occur != Occur.MUST_NOT) terms.addAll(clause.terms);
+        }
+        return terms;
+    }
+
+    public Map<String, Integer> termCounts() {
+        Map<String, Integer> termCounts = new HashMap<>();
+        for (String term : scoringTerms()) {
+            termCounts.put(term, termCounts.getOrDefault(term, 0) + 1);
+        }
+        return termCounts;
+    }
+
+    @Override
+    public String toString() {
+        return clauses.toString();
+    }
+
+    // --- Tokenizing ---
+
+    private static final class Token {
+        String text;
+        String operator; // AND, OR, NOT or null for a word
+        char prefix;     // '+', '-' or 0
+        BookField field;
+        boolean quoted;
+    }
+
+    private static List<Token> tokenize(String raw) {
+        List<Token> tokens = new ArrayList<>();
+        int n = raw.length();
+        int i = 0;
+        while (i < n) {
+            if (Character.isWhitespace(raw.charAt(i))) {
+                i++;
+                continue;
+            }
+            Token token = new Token();
+
+            // +word / -word (a lone + or - is just text)
+            char c = raw.charAt(i);
+            if ((c == '+' || c == '-') && i + 1 < n && !Character.isWhitespace(raw.charAt(i + 1))) {
+                token.prefix = c;
+                i++;
+            }
+
+            // field:word or field:"some phrase"
+            int colon = i;
+            while (colon < n && Character.isLetter(raw.charAt(colon))) colon++;
+            if (colon < n && raw.charAt(colon) == ':' && colon + 1 < n
+                    && !Character.isWhitespace(raw.charAt(colon + 1))) {
+                BookField field = FIELD_PREFIXES.get(raw.substring(i, colon).toLowerCase());
+                if (field != null) {
+                    token.field = field;
+                    i = colon + 1;
+                }
+            }
+
+            int end;
+            if (raw.charAt(i) == '"') {
+                end = raw.indexOf('"', i + 1);
+                if (end < 0) end = n;
+                token.text = raw.substring(i + 1, end);
+                token.quoted = true;
+                i = Math.min(n, end + 1);
+            } else {
+                end = i;
+                while (end < n && !Character.isWhitespace(raw.charAt(end))) end++;
+                token.text = raw.substring(i, end);
+                i = end;
+            }
+
+            boolean bare = !token.quoted && token.prefix == 0 && token.field == null;
+            if (bare && (token.text.equals("AND") || token.text.equals("OR") || token.text.equals("NOT"))) {
+                token.operator = token.text;
+            }
+            tokens.add(token);
+        }
+        return tokens;
+    }
+}
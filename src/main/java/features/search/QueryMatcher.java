@@ -0,0 +1,208 @@
+package features.search;
+
+import domain.BookField;
+import domain.PostingList;
+import domain.TitleMatch;
+import features.search.ParsedQuery.Clause;
+import features.search.ParsedQuery.Occur;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The per-document checks of one parsed query: whether a candidate satisfies the
+ * boolean clauses (required, optional, excluded, phrases), a proximity factor
+ * that favours terms occurring close together, and how the query lines up with
+ * the title.
+ *
+ * Every distinct (term, field) pair of the query is a "key". A document is
+ * described by one (PostingList, entry) pair per key: lists[k] holds the key's
+ * postings (already restricted to its field) and entries[k] the document's
+ * entry in it, or -1 when the key does not occur in the document.
+ */
+final class QueryMatcher {
+
+    // Share of the score that depends on proximity: far-apart terms keep 1 - PROXIMITY_WEIGHT of it
+    static final double PROXIMITY_WEIGHT = 0.3;
+
+    private final List<String> keyTerms = new ArrayList<>();
+    private final List<BookField> keyFields = new ArrayList<>();
+    private final boolean[] scoring;
+    private final Occur[] occurs;
+    private final int[][] clauseKeys;
+    private final boolean hasRequired;
+    private final int[] sequence;     // the scoring terms in query order, for the title match
+    private final int[] positiveKeys; // distinct scoring keys, for proximity
+
+    QueryMatcher(ParsedQuery query) {
+        Map<String, Integer> keys = new LinkedHashMap<>();
+        List<Clause> clauses = query.getClauses();
+        this.occurs = new Occur[clauses.size()];
+        this.clauseKeys = new int[clauses.size()][];
+        List<Integer> sequenceKeys = new ArrayList<>();
+
+        for (int c = 0; c < clauses.size(); c++) {
+            Clause clause = clauses.get(c);
+            occurs[c] = clause.getOccur();
+            clauseKeys[c] = new int[clause.getTerms().size()];
+            for (int j = 0; j < clauseKeys[c].length; j++) {
+                String term = clause.getTerms().get(j);
+                String name = clause.getField() == null ? term : clause.getField() + ":" + term;
+                Integer key = keys.get(name);
+                if (key == null) {
+                    key = keys.size();
+                    keys.put(name, key);
+                    keyTerms.add(term);
+                    keyFields.add(clause.getField());
+                }
+                clauseKeys[c][j] = key;
+                if (occurs[c] != Occur.MUST_NOT) sequenceKeys.add(key);
+            }
+        }
+
+        this.scoring = new boolean[keys.size()];
+        for (int key : sequenceKeys) scoring[key] = true;
+        this.hasRequired = query.hasRequired();
+        this.sequence = sequenceKeys.stream().mapToInt(Integer::intValue).toArray();
+        this.positiveKeys = sequenceKeys.stream().distinct().mapToInt(Integer::intValue).toArray();
+    }
+
+    int keyCount() {
+        return keyTerms.size();
+    }
+
+    String term(int key) {
+        return keyTerms.get(key);
+    }
+
+    // null when the key may occur anywhere in the book
+    BookField field(int key) {
+        return keyFields.get(key);
+    }
+
+    // false for keys that only appear in excluded clauses
+    boolean isScoring(int key) {
+        return scoring[key];
+    }
+
+    boolean hasRequired() {
+        return hasRequired;
+    }
+
+    /**
+     * Distinct keys of all required clauses: a match must appear in every one of their posting lists.
+     */
+    int[] requiredKeys() {
+        boolean[] seen = new boolean[keyCount()];
+        List<Integer> required = new ArrayList<>();
+        for (int c = 0; c < occurs.length; c++) {
+            if (occurs[c] != Occur.MUST) continue;
+            for (int key : clauseKeys[c]) {
+                if (!seen[key]) required.add(key);
+                seen[key] = true;
+            }
+        }
+        return required.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * True if the document satisfies the query: every required clause matches, no
+     * excluded one does, and without required clauses at least one optional one does.
+     */
+    boolean accepts(PostingList[] lists, int[] entries) {
+        boolean anyOptional = false;
+        for (int c = 0; c < occurs.length; c++) {
+            boolean matches = clauseKeys[c].length == 1
+                    ? entries[clauseKeys[c][0]] >= 0
+                    : findSequence(lists, entries, clauseKeys[c], 0) >= 0;
+            switch (occurs[c]) {
+                case MUST:
+                    if (!matches) return false;
+                    break;
+                case MUST_NOT:
+                    if (matches) return false;
+                    break;
+                default:
+                    anyOptional |= matches;
+                    break;
+            }
+        }
+        return hasRequired || anyOptional;
+    }
+
+    /**
+     * Score multiplier in [1 - PROXIMITY_WEIGHT, 1]. Proximity is 1 / (closest distance)
+     * for every pair of neighbouring distinct query terms, averaged over the pairs, so
+     * adjacent terms keep the full score. Never above 1: scores stay in 0..1 for the
+     * ReRanker and the top-k bounds stay valid.
+     */
+    double proximityFactor(PostingList[] lists, int[] entries) {
+        if (positiveKeys.length < 2) return 1.0;
+        double sum = 0.0;
+        for (int p = 0; p + 1 < positiveKeys.length; p++) {
+            int a = positiveKeys[p];
+            int b = positiveKeys[p + 1];
+            if (entries[a] < 0 || entries[b] < 0) continue;
+            sum += 1.0 / minDistance(lists[a], entries[a], lists[b], entries[b]);
+        }
+        return 1 - PROXIMITY_WEIGHT + PROXIMITY_WEIGHT * sum / (positiveKeys.length - 1);
+    }
+
+    /**
+     * Where the full query occurs inside the title, whose tokens are positions [0, titleLength).
+     */
+    TitleMatch titleMatch(PostingList[] lists, int[] entries, int titleLength) {
+        if (sequence.length == 0) return TitleMatch.NONE;
+        int start = findSequence(lists, entries, sequence, 0);
+        if (start < 0 || start + sequence.length > titleLength) return TitleMatch.NONE;
+        if (start > 0) return TitleMatch.CONTAINS;
+        return titleLength == sequence.length ? TitleMatch.EXACT : TitleMatch.STARTS_WITH;
+    }
+
+    /**
+     * First position p >= from such that key sequence[j] occurs at p + j for every j,
+     * or -1. Leapfrogs between the keys' sorted positions with galloping skips, so
+     * it never walks a position list linearly.
+     */
+    static int findSequence(PostingList[] lists, int[] entries, int[] sequence, int from) {
+        for (int key : sequence) {
+            if (entries[key] < 0) return -1;
+        }
+        int[] cursor = new int[sequence.length];
+        int candidate = from;
+        while (true) {
+            boolean aligned = true;
+            for (int j = 0; j < sequence.length; j++) {
+                PostingList list = lists[sequence[j]];
+                int entry = entries[sequence[j]];
+                int target = candidate + j;
+                cursor[j] = list.advancePosition(entry, cursor[j], target);
+                if (cursor[j] >= list.freq(entry)) return -1;
+
+                int pos = list.position(entry, cursor[j]);
+                if (pos != target) {
+                    candidate = pos - j; // the earliest start this key still allows
+                    aligned = false;
+                    break;
+                }
+            }
+            if (aligned) return candidate;
+        }
+    }
+
+    // Smallest |pa - pb| over both (sorted) position lists, by a merge walk
+    private static int minDistance(PostingList a, int ea, PostingList b, int eb) {
+        int i = 0, j = 0;
+        int best = Integer.MAX_VALUE;
+        while (i < a.freq(ea) && j < b.freq(eb)) {
+            int pa = a.position(ea, i);
+            int pb = b.position(eb, j);
+            best = Math.min(best, Math.abs(pa - pb));
+            if (pa < pb) i++;
+            else j++;
+        }
+        return Math.max(1, best);
+    }
+}
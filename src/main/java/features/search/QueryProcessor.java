@@ -1,117 +1,436 @@
 package features.search;
 
-import domain.Posting;
+import domain.BookField;
+import domain.PostingList;
 import domain.SearchResult;
+import storage.IndexSnapshot;
+import storage.IndexSnapshot.Segment;
+import storage.MappedIndex;
 import utils.TextProcessor;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+/**
+ * Runs queries against the current index snapshot. Thread-safe: every query pins
+ * one immutable snapshot for its whole run and keeps its working state local, and
+ * the TextProcessor gives each thread its own stemmer.
+ */
 public class QueryProcessor {
     private final TextProcessor textProcessor;
-    private final Map<String, List<Posting>> invertedIndex;
-    private final Map<Integer, Map<String, Double>> tfIdfVectors;
-    private final Map<String, Double> idfScores;
-
-    public QueryProcessor(TextProcessor textProcessor,
-                          Map<String, List<Posting>> invertedIndex,
-                          Map<Integer, Map<String, Double>> tfIdfVectors,
-                          Map<String, Double> idfScores) {
+    private final SegmentedIndex index;
+    private final Similarity similarity;
+
+    // Float sums vs. double bounds: a little slack so rounding never prunes a real top-k hit
+    private static final double BOUND_SLACK = 1.0001;
+
+    // Best first; equal scores go to the lower doc id, like the top-k heap
+    private static final Comparator<SearchResult> RANKING =
+            Comparator.<SearchResult>naturalOrder().thenComparingInt(SearchResult::getDocId);
+
+    public QueryProcessor(TextProcessor textProcessor, SegmentedIndex index) {
+        this(textProcessor, index, new CosineSimilarity());
+    }
+
+    public QueryProcessor(TextProcessor textProcessor, SegmentedIndex index, Similarity similarity) {
         this.textProcessor = textProcessor;
-        this.invertedIndex = invertedIndex;
-        this.tfIdfVectors = tfIdfVectors;
-        this.idfScores = idfScores;
+        this.index = index;
+        this.similarity = similarity;
     }
 
-    public List<SearchResult> search(String rawQuery) {
-        // 1. Process the query (same as indexing)
-        List<String> queryTerms = textProcessor.process(rawQuery);
+    /**
+     * Canonical form of a query after parsing, stop word removal and stemming: queries
+     * that can only ever return the same results have the same key (e.g. "Python  Books"
+     * and "python book"). Used as the result cache key.
+     */
+    public String normalize(String rawQuery) {
+        return ParsedQuery.parse(rawQuery, textProcessor).toString();
+    }
 
-        // 2. Calculate the query's own TF-IDF vector
-        Map<String, Double> queryVector = calculateQueryVector(queryTerms);
-        if (queryVector.isEmpty()) {
+    /**
+     * The index state queries currently run against; a new snapshot means results may have changed.
+     */
+    public IndexSnapshot snapshot() {
+        return index.snapshot();
+    }
+
+    /**
+     * All results for a query in the syntax of {@link ParsedQuery}, best first.
+     */
+    public List<SearchResult> search(String rawQuery) {
+        // 1. Parse and process the query (same processing as indexing)
+        ParsedQuery query = ParsedQuery.parse(rawQuery, textProcessor);
+        if (query.isEmpty()) {
             return Collections.emptyList(); // No valid terms
         }
+        QueryMatcher matcher = new QueryMatcher(query);
 
-        // 3. Find all documents that match *any* query term
-        Set<Integer> matchingDocIds = findMatchingDocuments(queryTerms);
+        // All reads of this query go against one snapshot of the live segments
+        IndexSnapshot snapshot = index.snapshot();
 
-        // 4. Score each matching document
-        List<SearchResult> results = new ArrayList<>();
-        for (int docId : matchingDocIds) {
-            Map<String, Double> docVector = tfIdfVectors.get(docId);
+        // 2. Let the similarity compute the query-side weights
+        Similarity.QueryScorer scorer = similarity.prepare(snapshot, query.termCounts());
+
+        // Required clauses: only the intersection of their postings can match, so score just that
+        if (matcher.hasRequired()) {
+            List<SearchResult> results = conjunctive(snapshot, matcher, scorer);
+            return rescale(results);
+        }
+
+        // 3. Term-at-a-time: add every posting's contribution straight into a docId-indexed accumulator
+        float[] scores = new float[snapshot.getMaxDocId() + 1];
+        // Not the score: a term can contribute 0 (zero IDF under cosine) before another adds to it
+        BitSet seen = new BitSet(scores.length);
+        int[] touched = new int[scores.length];
+        int touchedCount = 0;
+        // Resolved terms are kept per segment for the positional pass
+        Map<Segment, SegmentTerms> segmentTerms = new IdentityHashMap<>();
+        byte[][] termBytes = encode(matcher);
+
+        for (Segment segment : snapshot.getSegments()) {
+            SegmentTerms terms = new SegmentTerms(segment, matcher, termBytes, scorer);
+            segmentTerms.put(segment, terms);
 
-            // This is the core ranking logic!
-            double score = cosineSimilarity(queryVector, docVector);
+            for (int t = 0; t < terms.lists.length; t++) {
+                Similarity.TermScorer termScorer = terms.scorers[t];
+                if (termScorer == null) continue;
 
-            if (score > 0) {
-                results.add(new SearchResult(docId, score));
+                PostingList postings = terms.lists[t];
+                for (int i = 0; i < postings.size(); i++) {
+                    int docId = postings.docId(i);
+                    if (!segment.isLive(docId)) continue;
+
+                    if (!seen.get(docId)) {
+                        seen.set(docId);
+                        touched[touchedCount++] = docId;
+                    }
+                    scores[docId] += termScorer.score(postings, i);
+                }
             }
         }
 
+        // 4. Final per-document step (for cosine: divide by the precomputed document norm),
+        //    then the positional checks: clauses, proximity and the title match
+        List<SearchResult> results = new ArrayList<>(touchedCount);
+        int[] entries = new int[matcher.keyCount()];
+        for (int i = 0; i < touchedCount; i++) {
+            int docId = touched[i];
+            Segment segment = snapshot.segmentOf(docId);
+            double score = scorer.finish(segment, docId, scores[docId]);
+            if (score <= 0.0) continue;
+
+            SegmentTerms terms = segmentTerms.get(segment);
+            terms.fillEntries(docId, entries);
+            SearchResult result = positional(matcher, terms, entries, docId, score);
+            if (result != null) results.add(result);
+        }
+
         // 5. Rank (sort) the results by score
         Collections.sort(results);
 
-        return results;
+        return rescale(results);
+    }
+
+    /**
+     * The k best results for the query, best first, with the same scores as
+     * {@link #search(String)}. Document-at-a-time WAND: every term keeps a cursor and
+     * an upper bound of its contribution (from the per-term maxima stored in the index);
+     * a document is only scored when the bounds of the terms that can reach it add up
+     * to more than the current k-th best score, and the other cursors jump past it.
+     */
+    public List<SearchResult> search(String rawQuery, int k) {
+        ParsedQuery query = ParsedQuery.parse(rawQuery, textProcessor);
+        if (query.isEmpty() || k <= 0) {
+            return Collections.emptyList();
+        }
+        QueryMatcher matcher = new QueryMatcher(query);
+
+        IndexSnapshot snapshot = index.snapshot();
+        Similarity.QueryScorer scorer = similarity.prepare(snapshot, query.termCounts());
+
+        // The intersection of the required clauses is already small: score it all and cut
+        if (matcher.hasRequired()) {
+            List<SearchResult> results = conjunctive(snapshot, matcher, scorer);
+            return rescale(results.subList(0, Math.min(k, results.size())));
+        }
+
+        // Min-heap of the best k so far; on equal scores the lower doc id wins
+        PriorityQueue<SearchResult> top = new PriorityQueue<>(k + 1, RANKING.reversed());
+        byte[][] termBytes = encode(matcher);
+
+        // A live doc id belongs to exactly one segment, so segments are searched one after
+        // the other and share the heap (and with it the threshold)
+        for (Segment segment : snapshot.getSegments()) {
+            SegmentTerms terms = new SegmentTerms(segment, matcher, termBytes, scorer);
+            List<TermCursor> cursors = new ArrayList<>();
+            for (int t = 0; t < terms.lists.length; t++) {
+                if (terms.scorers[t] == null) continue;
+                TermCursor cursor = new TermCursor(segment, terms.lists[t], terms.scorers[t],
+                        terms.maxScores[t] * BOUND_SLACK);
+                if (cursor.skipDeleted()) cursors.add(cursor);
+            }
+            wand(terms, cursors, scorer, matcher, top, k);
+        }
+
+        List<SearchResult> results = new ArrayList<>(top);
+        results.sort(RANKING);
+        return rescale(results);
     }
 
-    private Set<Integer> findMatchingDocuments(List<String> queryTerms) {
-        Set<Integer> docIds = new HashSet<>();
-        for(String term : queryTerms) {
-            List<Posting> postings = invertedIndex.get(term);
-            if(postings != null){
-                for(Posting p : postings) {
-                    docIds.add(p.getDocId());
+    // The proximity factor never exceeds 1, so the term bounds stay valid bounds of the final score
+    private static void wand(SegmentTerms terms, List<TermCursor> cursorList, Similarity.QueryScorer scorer,
+                             QueryMatcher matcher, PriorityQueue<SearchResult> top, int k) {
+        TermCursor[] cursors = cursorList.toArray(new TermCursor[0]);
+        int live = cursors.length;
+        Arrays.sort(cursors, 0, live, Comparator.comparingInt(TermCursor::docId));
+        int[] entries = new int[matcher.keyCount()];
+
+        while (live > 0) {
+            double threshold = top.size() < k ? 0.0 : top.peek().getScore();
+
+            // 1. Pivot: the first cursor at which the summed bounds can beat the threshold
+            double bound = 0.0;
+            int pivot = -1;
+            for (int c = 0; c < live; c++) {
+                bound += cursors[c].maxScore;
+                if (bound > threshold) {
+                    pivot = c;
+                    break;
+                }
+            }
+            if (pivot < 0) return; // even all terms together cannot enter the top k
+            int pivotDoc = cursors[pivot].docId();
+
+            if (cursors[0].docId() == pivotDoc) {
+                // 2a. Every cursor up to the pivot sits on the pivot doc: score it for real
+                float accumulated = 0f;
+                int onPivot = 0;
+                while (onPivot < live && cursors[onPivot].docId() == pivotDoc) {
+                    accumulated += cursors[onPivot++].score();
                 }
+                double score = scorer.finish(terms.segment, pivotDoc, accumulated);
+                if (score > 0.0 && (top.size() < k || score > threshold)) {
+                    terms.fillEntries(pivotDoc, entries);
+                    offer(top, k, positional(matcher, terms, entries, pivotDoc, score));
+                }
+                // Move them all past it, re-inserting from the back keeps the array sorted
+                for (int c = onPivot - 1; c >= 0; c--) {
+                    live = reposition(cursors, c, live, cursors[c].advance(pivotDoc + 1));
+                }
+            } else {
+                // 2b. Documents before the pivot doc cannot make it: jump the first cursor ahead to it
+                live = reposition(cursors, 0, live, cursors[0].advance(pivotDoc));
             }
         }
-        return docIds;
     }
 
-    private Map<String, Double> calculateQueryVector(List<String> queryTerms) {
-        Map<String, Double> queryVector = new HashMap<>();
+    private static void offer(PriorityQueue<SearchResult> top, int k, SearchResult result) {
+        if (result == null) return;
+        if (top.size() < k || result.getScore() > top.peek().getScore()) {
+            top.add(result);
+            if (top.size() > k) top.poll();
+        }
+    }
+
+    /**
+     * Every match of a query with required clauses, best first. The postings of the
+     * required keys are intersected rarest first: the shortest list leads and the
+     * others gallop forward to its doc ids (and it gallops to theirs on a miss), so
+     * the cost follows the rarest term instead of the union of all of them.
+     */
+    private static List<SearchResult> conjunctive(IndexSnapshot snapshot, QueryMatcher matcher,
+                                                  Similarity.QueryScorer scorer) {
+        List<SearchResult> results = new ArrayList<>();
+        byte[][] termBytes = encode(matcher);
+        int[] required = matcher.requiredKeys();
+        int[] entries = new int[matcher.keyCount()];
+
+        for (Segment segment : snapshot.getSegments()) {
+            SegmentTerms terms = new SegmentTerms(segment, matcher, termBytes, scorer);
+            PostingList[] lists = new PostingList[required.length];
+            for (int r = 0; r < required.length; r++) lists[r] = terms.lists[required[r]];
+            Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
 
-        Map<String, Integer> termCounts = new HashMap<>();
-        for(String term : queryTerms) {
-            termCounts.put(term, termCounts.getOrDefault(term, 0) + 1);
+            PostingList lead = lists[0];
+            int[] at = new int[lists.length];
+            intersect:
+            for (int i = 0; i < lead.size(); ) {
+                int docId = lead.docId(i);
+                for (int r = 1; r < lists.length; r++) {
+                    at[r] = lists[r].advance(at[r], docId);
+                    if (at[r] == lists[r].size()) break intersect;
+                    if (lists[r].docId(at[r]) > docId) {
+                        i = lead.advance(i, lists[r].docId(at[r]));
+                        continue intersect;
+                    }
+                }
+                i++;
+                if (!segment.isLive(docId)) continue;
+
+                // Every required key is here: score the doc over all of its scoring keys
+                terms.fillEntries(docId, entries);
+                float accumulated = 0f;
+                for (int t = 0; t < entries.length; t++) {
+                    if (terms.scorers[t] != null && entries[t] >= 0) {
+                        accumulated += terms.scorers[t].score(terms.lists[t], entries[t]);
+                    }
+                }
+                double score = scorer.finish(segment, docId, accumulated);
+                if (score <= 0.0) continue;
+
+                SearchResult result = positional(matcher, terms, entries, docId, score);
+                if (result != null) results.add(result);
+            }
         }
+        results.sort(RANKING);
+        return results;
+    }
 
-        for(String term : termCounts.keySet()) {
-            double tf = 1 + Math.log10(termCounts.get(term));
-            double idf = idfScores.getOrDefault(term, 0.0);
+    /**
+     * Applies the per-document checks to a scored document: null if it does not satisfy
+     * the query's clauses, otherwise the score times the proximity factor, tagged with
+     * its title match.
+     */
+    private static SearchResult positional(QueryMatcher matcher, SegmentTerms terms, int[] entries,
+                                           int docId, double score) {
+        if (!matcher.accepts(terms.lists, entries)) return null;
 
-            queryVector.put(term, tf * idf);
+        int titleLength = terms.segment.getIndex().fieldLength(docId, BookField.TITLE.ordinal());
+        return new SearchResult(docId, score * matcher.proximityFactor(terms.lists, entries),
+                matcher.titleMatch(terms.lists, entries, titleLength));
+    }
+
+    // Restores doc id order after cursors[c] moved forward (or drops it when exhausted); returns the new live count
+    private static int reposition(TermCursor[] cursors, int c, int live, boolean hasMore) {
+        TermCursor moved = cursors[c];
+        if (!hasMore) {
+            System.arraycopy(cursors, c + 1, cursors, c, live - c - 1);
+            return live - 1;
+        }
+        int i = c;
+        while (i + 1 < live && cursors[i + 1].docId() < moved.docId()) {
+            cursors[i] = cursors[i + 1];
+            i++;
         }
-        return queryVector;
+        cursors[i] = moved;
+        return live;
     }
 
-    private double cosineSimilarity(Map<String, Double> vec1, Map<String, Double> vec2) {
-        if (vec2 == null) {
-            return 0.0; // Document has no vector?
+    /**
+     * Position in one term's postings inside one segment, skipping tombstoned docs.
+     */
+    private static final class TermCursor {
+        final Segment segment;
+        final PostingList postings;
+        final Similarity.TermScorer scorer;
+        final double maxScore;
+        int index;
+
+        TermCursor(Segment segment, PostingList postings, Similarity.TermScorer scorer, double maxScore) {
+            this.segment = segment;
+            this.postings = postings;
+            this.scorer = scorer;
+            this.maxScore = maxScore;
         }
 
-        double dotProduct = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
+        int docId() {
+            return postings.docId(index);
+        }
 
-        // Calculate Dot Product and Norm1 (Query)
-        for (String term : vec1.keySet()) {
-            double vec1Score = vec1.get(term);
-            double vec2Score = vec2.getOrDefault(term, 0.0);
+        float score() {
+            return scorer.score(postings, index);
+        }
+
+        // Moves to the first live doc >= target; false once the postings are exhausted
+        boolean advance(int target) {
+            index = postings.advance(index, target);
+            return skipDeleted();
+        }
+
+        boolean skipDeleted() {
+            while (index < postings.size() && !segment.isLive(postings.docId(index))) index++;
+            return index < postings.size();
+        }
+    }
+
+    /**
+     * Every query key resolved in one segment: its postings (an empty list when the
+     * term is missing, only the positions inside its field when it is field-scoped),
+     * and for scoring keys the term scorer and its upper bound.
+     */
+    private static final class SegmentTerms {
+        final Segment segment;
+        final PostingList[] lists;
+        final Similarity.TermScorer[] scorers;
+        final double[] maxScores;
+
+        SegmentTerms(Segment segment, QueryMatcher matcher, byte[][] termBytes, Similarity.QueryScorer scorer) {
+            this.segment = segment;
+            this.lists = new PostingList[termBytes.length];
+            this.scorers = new Similarity.TermScorer[termBytes.length];
+            this.maxScores = new double[termBytes.length];
+
+            MappedIndex segmentIndex = segment.getIndex();
+            for (int t = 0; t < termBytes.length; t++) {
+                // Encoded once, then resolved to an int term id in every segment's dictionary
+                int termId = segmentIndex.termId(termBytes[t]);
+                if (termId < 0) {
+                    lists[t] = new PostingList(1, 1);
+                    continue;
+                }
+                PostingList postings = segmentIndex.postings(termId);
+                BookField field = matcher.field(t);
+                lists[t] = field == null ? postings : withinField(segmentIndex, postings, field);
 
-            dotProduct += vec1Score * vec2Score;
-            norm1 += vec1Score * vec1Score; // norm1 += Math.pow(vec1Score, 2)
+                if (!matcher.isScoring(t)) continue;
+                String term = matcher.term(t);
+                scorers[t] = scorer.termScorer(term, segment, termId);
+                // Field scoping only drops positions, so the whole term's bound still holds
+                if (scorers[t] != null) maxScores[t] = scorer.maxScore(term, segment, termId);
+            }
         }
 
-        // Calculate Norm2 (Document)
-        for (double score : vec2.values()) {
-            norm2 += score * score; // norm2 += Math.pow(score, 2)
+        void fillEntries(int docId, int[] entries) {
+            for (int t = 0; t < lists.length; t++) entries[t] = lists[t].find(docId);
         }
+    }
 
-        // Prevent division by zero
-        if (norm1 == 0.0 || norm2 == 0.0) {
-            return 0.0;
+    // Keeps the positions that fall inside one field; positions run through the fields in BookField order
+    private static PostingList withinField(MappedIndex index, PostingList postings, BookField field) {
+        PostingList scoped = new PostingList(postings.size(), 8);
+        int[] buffer = new int[8];
+        for (int i = 0; i < postings.size(); i++) {
+            int docId = postings.docId(i);
+            int start = 0;
+            for (int f = 0; f < field.ordinal(); f++) start += index.fieldLength(docId, f);
+            int end = start + index.fieldLength(docId, field.ordinal());
+
+            int count = 0;
+            for (int j = postings.advancePosition(i, 0, start); j < postings.freq(i); j++) {
+                int pos = postings.position(i, j);
+                if (pos >= end) break;
+                if (count == buffer.length) buffer = Arrays.copyOf(buffer, count * 2);
+                buffer[count++] = pos;
+            }
+            if (count > 0) scoped.add(docId, buffer, count);
         }
+        return scoped;
+    }
+
+    private static byte[][] encode(QueryMatcher matcher) {
+        byte[][] encoded = new byte[matcher.keyCount()][];
+        for (int t = 0; t < encoded.length; t++) encoded[t] = matcher.term(t).getBytes(StandardCharsets.UTF_8);
+        return encoded;
+    }
 
-        return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
+    // Unbounded scores (BM25) are scaled into 0..1 like cosine, so the ReRanker blend still works
+    private List<SearchResult> rescale(List<SearchResult> sortedResults) {
+        if (similarity.isNormalized() || sortedResults.isEmpty()) return sortedResults;
+        double best = sortedResults.get(0).getScore();
+        List<SearchResult> scaled = new ArrayList<>(sortedResults.size());
+        for (SearchResult result : sortedResults) {
+            scaled.add(new SearchResult(result.getDocId(), result.getScore() / best, result.getTitleMatch()));
+        }
+        return scaled;
     }
 
 }
@@ -15,6 +15,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+/**
+ * Blends the retrieval score with popularity and rating. Safe to share between
+ * threads: the book map and the popularity scores are only read. New popularity
+ * scores arrive with a new engine (see EngineHolder), never in place.
+ */
 public class ReRanker {
 
     private final Map<Integer, Book> bookMap;
@@ -69,12 +74,12 @@ public class ReRanker {
 
     /**
      * Re-ranks a list using the Master Formula AND applies tiered boosts.
-     * @param tfIdfResults The raw results from the QueryProcessor.
-     * @param query The original user search query.
+     * @param tfIdfResults The raw results from the QueryProcessor, which already know
+     *                     where the query matched the title (from token positions).
      */
-    public List<SearchResult> reRank(List<SearchResult> tfIdfResults, String query) {
+    public List<SearchResult> reRank(List<SearchResult> tfIdfResults) {
         List<SearchResult> reRankedResults = new ArrayList<>();
-        String cleanQuery = query.trim().toLowerCase();
+        Map<Integer, Double> popularity = popularityMap;
 
         for (SearchResult oldResult : tfIdfResults) {
             int docId = oldResult.getDocId();
@@ -83,7 +88,7 @@ public class ReRanker {
 
             double tfIdfScore = oldResult.getScore();
             double normalizedRating = book.getRating() / 5.0;
-            double popularityScore = popularityMap.getOrDefault(docId, 0.0);
+            double popularityScore = popularity.getOrDefault(docId, 0.0);
 
             // --- 1. THE MASTER FORMULA (Base Score) ---
             double finalScore = (W_TFIDF * tfIdfScore) +
@@ -92,20 +97,22 @@ public class ReRanker {
 
             // --- 2. APPLY TIERED TITLE BOOSTS ---
             // We apply boosts *after* calculating the base score.
-            if (book.getTitle() != null) {
-                String title = book.getTitle().toLowerCase();
-
-                // Use 'if-else if' to prevent stacking boosts
-                if (title.equals(cleanQuery)) {
+            // Only the best tier applies, so boosts never stack.
+            switch (oldResult.getTitleMatch()) {
+                case EXACT:
                     finalScore += EXACT_TITLE_BOOST;
-                } else if (title.startsWith(cleanQuery)) {
+                    break;
+                case STARTS_WITH:
                     finalScore += STARTS_WITH_BOOST;
-                } else if (title.contains(cleanQuery)) {
+                    break;
+                case CONTAINS:
                     finalScore += CONTAINS_BOOST;
-                }
+                    break;
+                default:
+                    break;
             }
 
-            reRankedResults.add(new SearchResult(docId, finalScore));
+            reRankedResults.add(new SearchResult(docId, finalScore, oldResult.getTitleMatch()));
         }
 
         // --- 3. SORT BY FINAL SCORE & TIE-BREAK ---
@@ -0,0 +1,488 @@
+package features.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import domain.Book;
+import domain.CatalogDelta;
+import domain.DocVector;
+import domain.PostingList;
+import domain.SearchIndexData;
+import lombok.Getter;
+import lombok.Setter;
+import storage.BinaryIndexWriter;
+import storage.IndexSnapshot;
+import storage.IndexSnapshot.Segment;
+import storage.MappedIndex;
+import utils.TextProcessor;
+import utils.TfIdfCalculator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Segment-based index that can absorb catalog edits without a full rebuild.
+ *
+ * The shipped index_data.bin is the base segment. Added or changed books are
+ * indexed into small delta segments (same binary format) in the segment
+ * directory, and deletes/updates are recorded as tombstones against the segment
+ * holding the old copy. segments.json records the live segment list so edits
+ * survive a restart. A background merger folds delta segments together, and
+ * compacts everything into a new base once deltas and tombstones grow large.
+ *
+ * Readers never see a half-applied edit: every change publishes a new
+ * {@link IndexSnapshot} and queries read one snapshot from start to finish.
+ */
+public class SegmentedIndex implements AutoCloseable {
+
+    private static final String MANIFEST_FILE = "segments.json";
+    private static final String BASE_SEGMENT = "base";
+    private static final String SEGMENT_PREFIX = "seg_";
+
+    // Merge policy
+    private static final int MAX_DELTA_SEGMENTS = 4;       // merge all deltas once there are this many
+    private static final double FULL_MERGE_RATIO = 0.2;    // compact into a new base past 20% churn
+
+    private final MappedIndex base;
+    private final File segmentDir;
+    private final TextProcessor textProcessor;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService merger;
+
+    private volatile IndexSnapshot snapshot;
+    private long nextGeneration;
+    private boolean mergePending;
+    private boolean closed; // no more writes: another instance may own segmentDir by now
+
+    private SegmentedIndex(MappedIndex base, File segmentDir, TextProcessor textProcessor) {
+        this.base = base;
+        this.segmentDir = segmentDir;
+        this.textProcessor = textProcessor;
+        this.merger = segmentDir == null ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "devshelf-segment-merger");
+            t.setDaemon(true);
+            return t;
+        });
+        this.snapshot = new IndexSnapshot(0, List.of(new Segment(BASE_SEGMENT, base, new BitSet())), Map.of());
+    }
+
+    /**
+     * A read-only index over just the base segment (no edits, no merges).
+     */
+    public static SegmentedIndex of(MappedIndex base) {
+        return new SegmentedIndex(base, null, null);
+    }
+
+    /**
+     * Opens the base plus whatever delta segments and tombstones were persisted in segmentDir.
+     * Segments written against a different base (e.g. before an update replaced it) are discarded.
+     * A listed segment that cannot be read is left out and dropped from segments.json, so one
+     * missing file costs the books in it, not every edit.
+     */
+    public static SegmentedIndex open(MappedIndex base, File segmentDir, TextProcessor textProcessor) throws IOException {
+        segmentDir.mkdirs();
+        SegmentedIndex index = new SegmentedIndex(base, segmentDir, textProcessor);
+        index.loadManifest();
+        return index;
+    }
+
+    /**
+     * Same as {@link #open} but falls back to the read-only base if the segment store is unusable.
+     */
+    public static SegmentedIndex openOrBase(MappedIndex base, File segmentDir, TextProcessor textProcessor) {
+        try {
+            return open(base, segmentDir, textProcessor);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return of(base);
+        }
+    }
+
+    /**
+     * Forgets every delta segment and tombstone in segmentDir, e.g. once a full new catalog
+     * was installed that already contains those edits. The next open starts from the base.
+     */
+    public static void discardSegments(File segmentDir) throws IOException {
+        Files.deleteIfExists(new File(segmentDir, MANIFEST_FILE).toPath());
+    }
+
+    public IndexSnapshot snapshot() {
+        return snapshot;
+    }
+
+    // --- Catalog edits ---
+
+    /**
+     * Indexes new or changed books into one new delta segment. The previous copy
+     * of every changed book is tombstoned in the same step.
+     */
+    public synchronized void addOrUpdate(Collection<Book> books) throws IOException {
+        requireWritable();
+        if (books.isEmpty()) return;
+
+        Map<Integer, Book> unique = new LinkedHashMap<>();
+        for (Book book : books) unique.put(book.getBookId(), book);
+
+        // 1. Tombstone the old copies
+        List<Segment> segments = new ArrayList<>(snapshot.getSegments());
+        Map<String, Integer> deletedPostings = snapshot.copyDeletedPostings();
+        for (int docId : unique.keySet()) {
+            tombstone(segments, deletedPostings, docId);
+        }
+        IndexSnapshot afterDeletes = new IndexSnapshot(snapshot.getVersion(), segments, deletedPostings);
+
+        // 2. Index the new copies
+        IndexBuilder builder = new IndexBuilder(textProcessor);
+        for (Book book : unique.values()) builder.indexDocument(book);
+        Map<String, PostingList> invertedIndex = builder.getInvertedIndex();
+
+        // 3. Weight them with the live collection statistics including the new books
+        int liveDocs = afterDeletes.getLiveDocCount() + unique.size();
+        TfIdfCalculator calculator = new TfIdfCalculator();
+        calculator.calculateIdf(invertedIndex, term -> {
+            int df = afterDeletes.docFreq(term) + invertedIndex.get(term).size();
+            return Math.log10( (double) liveDocs / df );
+        });
+        SearchIndexData data = weigh(invertedIndex, calculator, builder.getFieldLengths());
+
+        segments.add(writeSegment(data, unique.size(), new BitSet()));
+        publish(segments, deletedPostings);
+        System.out.println("🧩 Indexed " + unique.size() + " book(s) into a delta segment ("
+                + (segments.size() - 1) + " delta segment(s) live).");
+    }
+
+    public synchronized void delete(Collection<Integer> docIds) throws IOException {
+        requireWritable();
+        List<Segment> segments = new ArrayList<>(snapshot.getSegments());
+        Map<String, Integer> deletedPostings = snapshot.copyDeletedPostings();
+
+        int removed = 0;
+        for (int docId : docIds) {
+            if (tombstone(segments, deletedPostings, docId)) removed++;
+        }
+        if (removed == 0) return;
+
+        publish(segments, deletedPostings);
+        System.out.println("🪦 Tombstoned " + removed + " book(s).");
+    }
+
+    /**
+     * Applies a batch of catalog edits: deletes first, then adds and replacements.
+     */
+    public synchronized void apply(CatalogDelta delta) throws IOException {
+        delete(delta.getDeletes());
+        addOrUpdate(delta.getUpserts());
+    }
+
+    /**
+     * Lets a merge that is already running finish, so the segment store is never left
+     * mid-merge when another instance opens it next (e.g. after an update). A merge that
+     * takes longer is abandoned: once this returns, the instance writes no more files.
+     */
+    @Override
+    public void close() {
+        if (merger == null) return;
+        merger.shutdown();
+        try {
+            if (!merger.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.err.println("⚠️ Segment merge still running after 1 minute, abandoning it.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Waits out a merge that is writing its result right now; any later one sees the flag
+        synchronized (this) {
+            closed = true;
+        }
+    }
+
+    // --- Tombstones ---
+
+    private boolean tombstone(List<Segment> segments, Map<String, Integer> deletedPostings, int docId) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            if (!segment.isLive(docId)) continue;
+
+            BitSet deleted = segment.copyDeleted();
+            deleted.set(docId);
+            segments.set(i, new Segment(segment.getName(), segment.getIndex(), deleted));
+            DocVector vector = segment.getIndex().vector(docId);
+            for (int t = 0; t < vector.size(); t++) {
+                deletedPostings.merge(segment.getIndex().term(vector.termId(t)), 1, Integer::sum);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static Map<String, Integer> deletedPostingsOf(IndexSnapshot snapshot) {
+        Map<String, Integer> deletedPostings = new HashMap<>();
+        for (Segment segment : snapshot.getSegments()) {
+            BitSet deleted = segment.copyDeleted();
+            for (int docId = deleted.nextSetBit(0); docId >= 0; docId = deleted.nextSetBit(docId + 1)) {
+                DocVector vector = segment.getIndex().vector(docId);
+                if (vector == null) continue;
+                for (int t = 0; t < vector.size(); t++) {
+                    deletedPostings.merge(segment.getIndex().term(vector.termId(t)), 1, Integer::sum);
+                }
+            }
+        }
+        return deletedPostings;
+    }
+
+    // --- Merging ---
+
+    private void maybeScheduleMerge() {
+        if (merger == null || merger.isShutdown() || mergePending || mergeKind(snapshot) == MergeKind.NONE) return;
+        mergePending = true;
+        merger.submit(() -> {
+            try {
+                runMerge();
+            } catch (Exception e) {
+                System.err.println("⚠️ Segment merge failed: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    mergePending = false;
+                    maybeScheduleMerge();
+                }
+            }
+        });
+    }
+
+    private enum MergeKind { NONE, DELTAS, FULL }
+
+    private MergeKind mergeKind(IndexSnapshot s) {
+        List<Segment> segments = s.getSegments();
+        int deltaDocs = 0;
+        int tombstones = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            if (i > 0) deltaDocs += segment.getIndex().getDocCount();
+            tombstones += segment.getIndex().getDocCount() - segment.getLiveDocCount();
+        }
+        if (deltaDocs + tombstones > FULL_MERGE_RATIO * Math.max(1, s.getLiveDocCount())) return MergeKind.FULL;
+        if (segments.size() - 1 >= MAX_DELTA_SEGMENTS) return MergeKind.DELTAS;
+        return MergeKind.NONE;
+    }
+
+    private void runMerge() throws IOException {
+        IndexSnapshot source = snapshot;
+        MergeKind kind = mergeKind(source);
+        if (kind == MergeKind.NONE) return;
+
+        List<Segment> sources = kind == MergeKind.FULL
+                ? source.getSegments()
+                : source.getSegments().subList(1, source.getSegments().size());
+        long start = System.nanoTime();
+
+        // 1. Collect the live postings of every source segment (outside the lock)
+        Map<String, PostingList> invertedIndex = new HashMap<>();
+        Map<Integer, String> docOrigin = new HashMap<>();
+        Map<Integer, int[]> fieldLengths = new HashMap<>();
+        for (Segment segment : sources) {
+            MappedIndex index = segment.getIndex();
+            for (int termId = 0; termId < index.getTermCount(); termId++) {
+                PostingList postings = index.postings(termId);
+                for (int i = 0; i < postings.size(); i++) {
+                    int docId = postings.docId(i);
+                    if (!segment.isLive(docId)) continue;
+                    invertedIndex.computeIfAbsent(index.term(termId), k -> new PostingList()).add(postings, i);
+                    if (docOrigin.put(docId, segment.getName()) == null) {
+                        fieldLengths.put(docId, index.fieldLengths(docId));
+                    }
+                }
+            }
+        }
+        TfIdfCalculator calculator = new TfIdfCalculator();
+        calculator.calculateIdf(invertedIndex, source::idf);
+        SearchIndexData data = weigh(invertedIndex, calculator, fieldLengths);
+
+        synchronized (this) {
+            if (closed) return; // abandoned by close()
+
+            // 2. Carry over deletes that happened while we were merging
+            IndexSnapshot current = snapshot;
+            Map<String, Segment> currentByName = new HashMap<>();
+            for (Segment segment : current.getSegments()) currentByName.put(segment.getName(), segment);
+
+            BitSet deleted = new BitSet();
+            for (Map.Entry<Integer, String> entry : docOrigin.entrySet()) {
+                Segment now = currentByName.get(entry.getValue());
+                if (now == null || !now.isLive(entry.getKey())) deleted.set(entry.getKey());
+            }
+            Segment merged = writeSegment(data, docOrigin.size(), deleted);
+
+            // 3. Swap the sources for the merged segment, keeping segments added meanwhile
+            Set<String> sourceNames = new HashSet<>();
+            for (Segment segment : sources) sourceNames.add(segment.getName());
+            List<Segment> segments = new ArrayList<>();
+            for (Segment segment : current.getSegments()) {
+                if (!sourceNames.contains(segment.getName())) segments.add(segment);
+            }
+            segments.add(kind == MergeKind.FULL ? 0 : 1, merged);
+
+            IndexSnapshot next = new IndexSnapshot(current.getVersion() + 1, segments, Map.of());
+            snapshot = new IndexSnapshot(next.getVersion(), segments, deletedPostingsOf(next));
+            writeManifest();
+
+            for (String name : sourceNames) deleteSegmentFile(name);
+        }
+        System.out.printf("🔧 Merged %d segment(s) (%s) in %.2f ms%n",
+                sources.size(), kind, (System.nanoTime() - start) / 1e6);
+    }
+
+    // --- Helpers ---
+
+    private static SearchIndexData weigh(Map<String, PostingList> invertedIndex, TfIdfCalculator calculator,
+                                         Map<Integer, int[]> fieldLengths) {
+        calculator.calculateTfIdf(invertedIndex);
+        return new SearchIndexData(invertedIndex, calculator.getDictionary(),
+                calculator.getDocVectors(), calculator.getIdfScores(), fieldLengths);
+    }
+
+    private Segment writeSegment(SearchIndexData data, int docCount, BitSet deleted) throws IOException {
+        String name = SEGMENT_PREFIX + (nextGeneration++) + ".bin";
+        File file = new File(segmentDir, name);
+        new BinaryIndexWriter().write(data, docCount, file);
+        return new Segment(name, MappedIndex.open(file.toPath()), deleted);
+    }
+
+    private void publish(List<Segment> segments, Map<String, Integer> deletedPostings) throws IOException {
+        snapshot = new IndexSnapshot(snapshot.getVersion() + 1, segments, deletedPostings);
+        writeManifest();
+        maybeScheduleMerge();
+    }
+
+    private void requireWritable() {
+        if (segmentDir == null) throw new IllegalStateException("Index was opened read-only");
+        if (closed) throw new IllegalStateException("Index was closed");
+    }
+
+    private void deleteSegmentFile(String name) {
+        if (BASE_SEGMENT.equals(name)) return;
+        try {
+            Files.deleteIfExists(new File(segmentDir, name).toPath());
+        } catch (IOException e) {
+            // Still mapped on some platforms; it is cleaned up on the next open
+        }
+    }
+
+    private String baseFingerprint() {
+        return base.getDocCount() + ":" + base.getTermCount() + ":" + base.getSizeInBytes();
+    }
+
+    // --- Manifest ---
+
+    @Getter
+    @Setter
+    public static class Manifest {
+        private String baseFingerprint;
+        private long nextGeneration;
+        private List<SegmentEntry> segments = new ArrayList<>();
+    }
+
+    @Getter
+    @Setter
+    public static class SegmentEntry {
+        private String name;
+        private List<Integer> deleted = new ArrayList<>();
+    }
+
+    private void loadManifest() throws IOException {
+        File manifestFile = new File(segmentDir, MANIFEST_FILE);
+        Set<String> referenced = new HashSet<>();
+
+        boolean repair = false;
+        Manifest manifest = null;
+        if (manifestFile.exists()) {
+            try {
+                manifest = mapper.readValue(manifestFile, Manifest.class);
+            } catch (IOException e) {
+                System.err.println("❌ " + MANIFEST_FILE + " is unreadable (" + e.getMessage()
+                        + "), catalog edits since the last full update are lost.");
+                repair = true;
+            }
+        }
+
+        if (manifest != null) {
+            if (baseFingerprint().equals(manifest.getBaseFingerprint())) {
+                try {
+                    List<Segment> segments = new ArrayList<>();
+                    for (SegmentEntry entry : manifest.getSegments()) {
+                        MappedIndex index = base;
+                        if (!BASE_SEGMENT.equals(entry.getName())) {
+                            try {
+                                index = MappedIndex.open(new File(segmentDir, entry.getName()).toPath());
+                            } catch (IOException e) {
+                                System.err.println("❌ Index segment " + entry.getName() + " is missing or unreadable ("
+                                        + e + "), the books in it are left out until the next full update.");
+                                repair = true;
+                                continue;
+                            }
+                        }
+                        BitSet deleted = new BitSet();
+                        for (int docId : entry.getDeleted()) deleted.set(docId);
+                        segments.add(new Segment(entry.getName(), index, deleted));
+                        referenced.add(entry.getName());
+                    }
+                    nextGeneration = manifest.getNextGeneration();
+                    IndexSnapshot loaded = new IndexSnapshot(1, segments, Map.of());
+                    snapshot = new IndexSnapshot(1, segments, deletedPostingsOf(loaded));
+                    System.out.println("🧩 Loaded " + segments.size() + " index segment(s), "
+                            + snapshot.getLiveDocCount() + " live documents.");
+                } catch (IllegalArgumentException e) {
+                    // A segment from an older index format; the base alone is still consistent
+                    System.out.println("🧩 " + e.getMessage() + ", discarding old delta segments.");
+                    referenced.clear();
+                    repair = false;
+                }
+            } else {
+                System.out.println("🧩 Base index changed, discarding old delta segments.");
+            }
+        }
+
+        // Record what was actually loaded, so the next start does not trip over the same file
+        if (repair) writeManifest();
+
+        // Remove segment files that are no longer referenced (old merges, stale base)
+        File[] files = segmentDir.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX));
+        if (files != null) {
+            for (File file : files) {
+                if (!referenced.contains(file.getName())) deleteSegmentFile(file.getName());
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.setBaseFingerprint(baseFingerprint());
+        manifest.setNextGeneration(nextGeneration);
+        for (Segment segment : snapshot.getSegments()) {
+            SegmentEntry entry = new SegmentEntry();
+            entry.setName(segment.getName());
+            BitSet deleted = segment.copyDeleted();
+            for (int docId = deleted.nextSetBit(0); docId >= 0; docId = deleted.nextSetBit(docId + 1)) {
+                entry.getDeleted().add(docId);
+            }
+            manifest.getSegments().add(entry);
+        }
+
+        // Write-then-rename so a crash never leaves a half-written manifest
+        File tmp = new File(segmentDir, MANIFEST_FILE + ".tmp");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(tmp, manifest);
+        Files.move(tmp.toPath(), new File(segmentDir, MANIFEST_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
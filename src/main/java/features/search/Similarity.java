@@ -0,0 +1,66 @@
+package features.search;
+
+import domain.PostingList;
+import storage.IndexSnapshot;
+import storage.IndexSnapshot.Segment;
+
+import java.util.Map;
+
+/**
+ * Scoring model used by {@link QueryProcessor}. The query processor walks the
+ * postings term-at-a-time and only adds numbers into an accumulator; everything
+ * model-specific (query weights, tf saturation, length normalization) lives here.
+ */
+public interface Similarity {
+
+    /**
+     * Prepares the query-side statistics for one query against one snapshot.
+     * @param queryTermCounts processed (stemmed) query terms and how often each occurs
+     */
+    QueryScorer prepare(IndexSnapshot snapshot, Map<String, Integer> queryTermCounts);
+
+    /**
+     * False when scores are unbounded (BM25); the query processor then scales
+     * them so the best hit is 1.0, which keeps the ReRanker's weights meaningful.
+     */
+    default boolean isNormalized() {
+        return true;
+    }
+
+    interface QueryScorer {
+        /**
+         * Scorer for the postings of one query term in one segment, or null if
+         * the term cannot contribute (e.g. an IDF of zero).
+         */
+        TermScorer termScorer(String term, Segment segment, int termId);
+
+        /**
+         * Upper bound of what the term can add to any document's finished score in
+         * this segment, built from the per-term statistics stored in the index.
+         * Used by top-k search to skip documents that cannot make the cut.
+         */
+        double maxScore(String term, Segment segment, int termId);
+
+        /**
+         * Turns a document's accumulated score into its final score; 0 or less drops it.
+         */
+        double finish(Segment segment, int docId, float accumulated);
+    }
+
+    @FunctionalInterface
+    interface TermScorer {
+        /**
+         * Contribution of entry i of the term's posting list.
+         */
+        float score(PostingList postings, int i);
+    }
+
+    static Similarity byName(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "cosine": return new CosineSimilarity();
+            case "bm25": return new BM25Similarity();
+            case "bm25f": return new BM25FSimilarity();
+            default: throw new IllegalArgumentException("Unknown similarity: " + name);
+        }
+    }
+}
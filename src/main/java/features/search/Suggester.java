@@ -1,14 +1,61 @@
 package features.search;
 
+import utils.EditDistance;
+
 import java.util.*;
 
+/**
+ * "Did you mean" suggestions for queries without results. Titles and stop words
+ * are copied at construction and only read afterwards, so one instance can serve
+ * any number of threads.
+ *
+ * Titles are preprocessed once, and their words go into a BK-tree. A lookup scores
+ * only the titles that have a word close enough to a query word to still reach the
+ * threshold, instead of every title in the catalog.
+ *
+ * Distances come from a per-thread {@link EditDistance}: bit-parallel and free of
+ * allocations, and bounded where only a closer match than the best so far matters.
+ */
 public class Suggester {
+    // Score = WORD_WEIGHT * word-level + GLOBAL_WEIGHT * global similarity, suggested from THRESHOLD on
+    private static final double WORD_WEIGHT = 0.65;
+    private static final double GLOBAL_WEIGHT = 0.35;
+    private static final double THRESHOLD = 0.6;
+    // Even with a perfect global similarity, some query word has to match a title word this well
+    private static final double MIN_WORD_SIMILARITY = (THRESHOLD - GLOBAL_WEIGHT) / WORD_WEIGHT;
+
     private final List<String> allTitles;
     private final Set<String> stopwords;
+    // Preprocessed text and words per title; null for titles with nothing left to compare
+    private final String[] cleanedTitles;
+    private final String[][] titleWords;
+    private final ThreadLocal<EditDistance> editDistance = ThreadLocal.withInitial(EditDistance::new);
+    private final BkTree wordIndex = new BkTree(this::levenshteinDistance);
 
     public Suggester(List<String> titles, Set<String> stopwords) {
-        this.allTitles = titles != null ? titles : new ArrayList<>();
-        this.stopwords = stopwords != null ? stopwords : new HashSet<>();
+        this.allTitles = titles != null ? Collections.unmodifiableList(new ArrayList<>(titles)) : Collections.emptyList();
+        this.stopwords = stopwords != null ? Collections.unmodifiableSet(new HashSet<>(stopwords)) : Collections.emptySet();
+
+        // 1. Preprocess every title once
+        cleanedTitles = new String[allTitles.size()];
+        titleWords = new String[allTitles.size()][];
+        Map<String, List<Integer>> titlesOfWord = new LinkedHashMap<>();
+        for (int t = 0; t < allTitles.size(); t++) {
+            String title = allTitles.get(t);
+            if (title == null || title.trim().isEmpty()) continue;
+            String cleanedTitle = preprocess(title);
+            if (cleanedTitle.isEmpty()) continue;
+
+            cleanedTitles[t] = cleanedTitle;
+            titleWords[t] = cleanedTitle.split(" ");
+            for (String word : titleWords[t]) {
+                List<Integer> ids = titlesOfWord.computeIfAbsent(word, w -> new ArrayList<>());
+                if (ids.isEmpty() || ids.get(ids.size() - 1) != t) ids.add(t);
+            }
+        }
+
+        // 2. Index the distinct words
+        titlesOfWord.forEach((word, ids) -> wordIndex.add(word, ids.stream().mapToInt(Integer::intValue).toArray()));
     }
 
 
@@ -17,28 +64,46 @@ public class Suggester {
 
         String cleanedQuery = preprocess(query);
         if (cleanedQuery.isEmpty()) return null;
+        String[] queryWords = cleanedQuery.split(" ");
+
+        // 1. Candidates: titles with a word close to a query word
+        BitSet candidates = new BitSet(allTitles.size());
+        for (String queryWord : queryWords) {
+            wordIndex.search(queryWord, maxTypos(queryWord), ids -> {
+                for (int t : ids) candidates.set(t);
+            });
+        }
 
+        // 2. Score them in catalog order, so ties go to the same title as a full scan
+        EditDistance distance = editDistance.get();
         double bestScore = 0.0;
         String bestMatch = null;
 
-        for (String title : allTitles) {
-            if (title == null || title.trim().isEmpty()) continue;
-
-            String cleanedTitle = preprocess(title);
-            if (cleanedTitle.isEmpty()) continue;
-
-            double globalSim = calculateSimilarity(cleanedQuery, cleanedTitle);
-            double wordSim = wordLevelSimilarity(cleanedQuery, cleanedTitle);
-            double finalScore = 0.65 * wordSim + 0.35 * globalSim;
+        for (int t = candidates.nextSetBit(0); t >= 0; t = candidates.nextSetBit(t + 1)) {
+            double wordSim = wordLevelSimilarity(distance, queryWords, titleWords[t]);
+            // Titles that can neither beat the best one nor reach the threshold are not worth
+            // an exact global distance; a lower bound still ranks them below where they belong
+            double floor = Math.max(bestScore, THRESHOLD);
+            if (WORD_WEIGHT * wordSim + GLOBAL_WEIGHT < floor) continue;
+            double needed = (floor - WORD_WEIGHT * wordSim) / GLOBAL_WEIGHT;
+            double globalSim = calculateSimilarity(distance, cleanedQuery, cleanedTitles[t], needed);
+            double finalScore = WORD_WEIGHT * wordSim + GLOBAL_WEIGHT * globalSim;
 
             if (finalScore > bestScore) {
                 bestScore = finalScore;
-                bestMatch = title;
+                bestMatch = allTitles.get(t);
             }
         }
 
         // Only suggest if score >= threshold
-        return (bestMatch != null && bestScore >= 0.6) ? bestMatch : null;
+        return (bestMatch != null && bestScore >= THRESHOLD) ? bestMatch : null;
+    }
+
+    // The most edits at which a title word can still be MIN_WORD_SIMILARITY similar to this one.
+    // Similarity is 1 - d / max(length, other length) and the other word has at most d + length
+    // chars, so d <= (1 - s) / s * length. Rounded up: a few extra candidates are harmless.
+    private static int maxTypos(String word) {
+        return (int) Math.ceil((1 - MIN_WORD_SIMILARITY) / MIN_WORD_SIMILARITY * word.length());
     }
 
     // --- Preprocess text: lowercase, remove punctuation, remove stopwords ---
@@ -55,24 +120,24 @@ public class Suggester {
     }
 
     // --- Global similarity using Levenshtein ---
-    private double calculateSimilarity(String s1, String s2) {
+    // Exact when it is at least 'atLeast'; otherwise some value below that. The distance
+    // gives up one edit past the bound, so rounding in the bound can never cut a match.
+    private double calculateSimilarity(EditDistance distance, String s1, String s2, double atLeast) {
         int maxLen = Math.max(s1.length(), s2.length());
         if (maxLen == 0) return 1.0;
-        return 1.0 - ((double) levenshteinDistance(s1, s2) / maxLen);
+        int maxDistance = atLeast <= 0.0 ? maxLen : (int) ((1.0 - atLeast) * maxLen) + 1;
+        return 1.0 - ((double) distance.distance(s1, s2, maxDistance) / maxLen);
     }
 
     // --- Word-level similarity ---
-    private double wordLevelSimilarity(String query, String title) {
-        if (query.isEmpty()) return 0.0;
-        String[] qWords = query.split(" ");
-        String[] tWords = title.split(" ");
-        if (tWords.length == 0) return 0.0;
+    private double wordLevelSimilarity(EditDistance distance, String[] qWords, String[] tWords) {
+        if (qWords.length == 0 || tWords.length == 0) return 0.0;
 
         double total = 0.0;
         for (String qw : qWords) {
             double best = 0.0;
             for (String tw : tWords) {
-                double sim = calculateSimilarity(qw, tw);
+                double sim = calculateSimilarity(distance, qw, tw, best);
                 if (sim > best) best = sim;
                 if (best >= 0.95) break;
             }
@@ -83,24 +148,6 @@ public class Suggester {
 
     // --- Levenshtein distance ---
     public int levenshteinDistance(String s1, String s2) {
-        if (s1 == null) s1 = "";
-        if (s2 == null) s2 = "";
-
-        int m = s1.length(), n = s2.length();
-        int[][] dp = new int[m + 1][n + 1];
-
-        for (int i = 0; i <= m; i++) dp[i][0] = i;
-        for (int j = 0; j <= n; j++) dp[0][j] = j;
-
-        for (int i = 1; i <= m; i++) {
-            for (int j = 1; j <= n; j++) {
-                int cost = s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1;
-                dp[i][j] = Math.min(
-                        Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1),
-                        dp[i - 1][j - 1] + cost
-                );
-            }
-        }
-        return dp[m][n];
+        return editDistance.get().distance(s1, s2);
     }
 }
@@ -0,0 +1,191 @@
+package storage;
+
+import domain.DocVector;
+import domain.PostingList;
+import domain.SearchIndexData;
+import domain.TermDictionary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes a freshly built {@link SearchIndexData} into the compact binary
+ * layout described in {@link IndexFormat}.
+ */
+public class BinaryIndexWriter {
+
+    public void write(SearchIndexData indexData, int docCount, File outputFile) throws IOException {
+        try (OutputStream out = new FileOutputStream(outputFile)) {
+            out.write(toBytes(indexData, docCount));
+        }
+    }
+
+    public byte[] toBytes(SearchIndexData indexData, int docCount) {
+        Map<String, PostingList> invertedIndex = indexData.getInvertedIndex();
+        TermDictionary dictionary = indexData.getDictionary();
+        Map<Integer, DocVector> docVectors = indexData.getDocVectors();
+        double[] idfScores = indexData.getIdfScores();
+        Map<Integer, int[]> fieldLengths = indexData.getFieldLengths();
+        int termCount = dictionary.size();
+
+        int maxDocId = -1;
+        for (int docId : docVectors.keySet()) maxDocId = Math.max(maxDocId, docId);
+
+        // Highest normalized weight (weight / doc norm) of every term: its largest possible cosine impact
+        float[] maxImpacts = new float[termCount];
+        for (DocVector vector : docVectors.values()) {
+            float norm = vector.norm();
+            if (norm == 0f) continue;
+            for (int i = 0; i < vector.size(); i++) {
+                maxImpacts[vector.termId(i)] = Math.max(maxImpacts[vector.termId(i)], vector.weight(i) / norm);
+            }
+        }
+
+        // 1. Front-coded term bytes + postings, in term id (= UTF-8 byte) order
+        int blockCount = (termCount + IndexFormat.TERM_BLOCK_SIZE - 1) / IndexFormat.TERM_BLOCK_SIZE;
+        ByteBuffer termIndex = ByteBuffer.allocate(blockCount * Integer.BYTES);
+        ByteBuffer termTable = ByteBuffer.allocate(termCount * IndexFormat.TERM_ENTRY_SIZE);
+        ByteArrayOutputStream termSection = new ByteArrayOutputStream();
+        ByteArrayOutputStream postingSection = new ByteArrayOutputStream();
+
+        byte[] previous = new byte[0];
+        for (int termId = 0; termId < termCount; termId++) {
+            String term = dictionary.term(termId);
+            PostingList postings = invertedIndex.get(term);
+            postings.sortByDocId();
+
+            int maxFreq = 0;
+            int minDocLength = Integer.MAX_VALUE;
+            for (int i = 0; i < postings.size(); i++) {
+                maxFreq = Math.max(maxFreq, postings.freq(i));
+                minDocLength = Math.min(minDocLength, docLength(fieldLengths, postings.docId(i)));
+            }
+
+            termTable.putInt(postings.size());
+            termTable.putInt(postingSection.size());
+            termTable.putDouble(idfScores[termId]);
+            termTable.putFloat(maxImpacts[termId]);
+            termTable.putInt(maxFreq);
+            termTable.putInt(minDocLength == Integer.MAX_VALUE ? 0 : minDocLength);
+
+            byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+            if (termId % IndexFormat.TERM_BLOCK_SIZE == 0) {
+                termIndex.putInt(termSection.size());
+                VarInt.write(termSection, bytes.length);
+                termSection.writeBytes(bytes);
+            } else {
+                int shared = sharedPrefix(previous, bytes);
+                VarInt.write(termSection, shared);
+                VarInt.write(termSection, bytes.length - shared);
+                termSection.write(bytes, shared, bytes.length - shared);
+            }
+            previous = bytes;
+
+            int lastDoc = 0;
+            PostingList.Cursor cursor = postings.cursor();
+            while (cursor.next()) {
+                int docId = cursor.docId();
+                maxDocId = Math.max(maxDocId, docId);
+                VarInt.write(postingSection, docId - lastDoc);
+                lastDoc = docId;
+
+                VarInt.write(postingSection, cursor.freq());
+                int lastPos = 0;
+                for (int j = 0; j < cursor.freq(); j++) {
+                    int pos = cursor.position(j);
+                    VarInt.write(postingSection, pos - lastPos);
+                    lastPos = pos;
+                }
+            }
+        }
+
+        // 2. Per-document vectors + norms, addressed through a direct docId table
+        ByteBuffer docTable = ByteBuffer.allocate((maxDocId + 1) * IndexFormat.DOC_ENTRY_SIZE);
+        for (int i = 0; i <= maxDocId; i++) docTable.putInt(i * IndexFormat.DOC_ENTRY_SIZE, -1);
+
+        ByteArrayOutputStream vectorSection = new ByteArrayOutputStream();
+        List<Integer> docIds = new ArrayList<>(docVectors.keySet());
+        docIds.sort(null);
+        for (int docId : docIds) {
+            DocVector vector = docVectors.get(docId);
+
+            // The cosine denominator never changes for a document, so it is computed once here
+            docTable.putInt(docId * IndexFormat.DOC_ENTRY_SIZE + IndexFormat.DOC_VECTOR, vectorSection.size());
+            docTable.putFloat(docId * IndexFormat.DOC_ENTRY_SIZE + IndexFormat.DOC_NORM, vector.norm());
+            int[] lengths = fieldLengths == null ? null : fieldLengths.get(docId);
+            for (int f = 0; lengths != null && f < IndexFormat.FIELD_COUNT; f++) {
+                int at = docId * IndexFormat.DOC_ENTRY_SIZE + IndexFormat.DOC_FIELD_LENGTHS + f * Short.BYTES;
+                docTable.putShort(at, (short) Math.min(lengths[f], 0xFFFF));
+            }
+
+            VarInt.write(vectorSection, vector.size());
+            int lastTerm = 0;
+            for (int i = 0; i < vector.size(); i++) {
+                VarInt.write(vectorSection, vector.termId(i) - lastTerm);
+                lastTerm = vector.termId(i);
+                writeFloat(vectorSection, vector.weight(i));
+            }
+        }
+
+        // 3. Header + sections
+        int termIndexOffset = IndexFormat.HEADER_SIZE;
+        int termTableOffset = termIndexOffset + termIndex.capacity();
+        int docTableOffset = termTableOffset + termTable.capacity();
+        int termBytesOffset = docTableOffset + docTable.capacity();
+        int postingsOffset = termBytesOffset + termSection.size();
+        int vectorsOffset = postingsOffset + postingSection.size();
+        int totalSize = vectorsOffset + vectorSection.size();
+
+        ByteBuffer file = ByteBuffer.allocate(totalSize);
+        file.putInt(IndexFormat.MAGIC);
+        file.putInt(IndexFormat.VERSION);
+        file.putInt(docCount);
+        file.putInt(termCount);
+        file.putInt(maxDocId);
+        file.putInt(termIndexOffset);
+        file.putInt(termTableOffset);
+        file.putInt(docTableOffset);
+        file.putInt(termBytesOffset);
+        file.putInt(postingsOffset);
+        file.putInt(vectorsOffset);
+
+        file.put(termIndex.array());
+        file.put(termTable.array());
+        file.put(docTable.array());
+        file.put(termSection.toByteArray());
+        file.put(postingSection.toByteArray());
+        file.put(vectorSection.toByteArray());
+        return file.array();
+    }
+
+    private static int docLength(Map<Integer, int[]> fieldLengths, int docId) {
+        int[] lengths = fieldLengths == null ? null : fieldLengths.get(docId);
+        if (lengths == null) return 0;
+        int length = 0;
+        for (int f = 0; f < IndexFormat.FIELD_COUNT; f++) length += Math.min(lengths[f], 0xFFFF);
+        return length;
+    }
+
+    private static int sharedPrefix(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < n && a[i] == b[i]) i++;
+        return i;
+    }
+
+    private static void writeFloat(ByteArrayOutputStream out, float value) {
+        int bits = Float.floatToIntBits(value);
+        out.write(bits >>> 24);
+        out.write(bits >>> 16);
+        out.write(bits >>> 8);
+        out.write(bits);
+    }
+}
@@ -9,6 +9,8 @@ import java.io.File;
 import utils.StorageUtils;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Collections;
 import java.util.List;
 
@@ -54,5 +56,16 @@ public class BookLoader {
         }
     }
 
+    /**
+     * Writes the catalog to AppData, where loadBooks() picks it up ahead of the jar copy.
+     * Written next to it and renamed, so a crash never leaves a half-written catalog.
+     */
+    public void saveBooks(List<Book> books) throws IOException {
+        File updatedFile = new File(StorageUtils.getAppDataDir(), "book.json");
+        File tmp = new File(updatedFile.getPath() + ".tmp");
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(tmp, books);
+        Files.move(tmp.toPath(), updatedFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
 }
 // Work on book.json - open and parson book.json
\ No newline at end of file
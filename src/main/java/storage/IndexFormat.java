@@ -0,0 +1,63 @@
+package storage;
+
+import domain.BookField;
+
+/**
+ * Layout of the binary index file (index_data.bin).
+ *
+ * <pre>
+ * Header      : magic, version, docCount, termCount, maxDocId, then the offset of every section
+ * Term index  : one int per block of TERM_BLOCK_SIZE terms, the block's position in the term bytes
+ * Term table  : termCount fixed entries {docFreq, postingsPos, idf, maxImpact, maxFreq, minDocLength},
+ *               indexed by term id; the last three are upper-bound statistics for top-k pruning
+ * Doc table   : (maxDocId + 1) entries {vectorPos (-1 for unknown ids), float vector norm,
+ *               FIELD_COUNT x u16 token count per BookField}
+ * Term bytes  : front-coded blocks; the first term of a block is varint length + UTF-8 bytes,
+ *               every other one is varint sharedPrefix + varint suffixLength + suffix bytes
+ * Postings    : per term, docFreq x (varint docGap, varint freq, freq x varint positionGap)
+ * Vectors     : per doc, varint size + size x (varint termIdGap, float tf-idf weight)
+ * </pre>
+ *
+ * Term ids are the ordinals of the terms sorted by UTF-8 bytes. All "Pos" values
+ * are relative to the start of their section. The format is versioned so an old
+ * file left in AppData is rejected instead of misread.
+ */
+public final class IndexFormat {
+
+    public static final int MAGIC = 0x44534958; // "DSIX"
+    public static final int VERSION = 5;
+
+    public static final int HEADER_SIZE = 44;
+    public static final int TERM_ENTRY_SIZE = 28;
+    public static final int FIELD_COUNT = BookField.COUNT;
+    public static final int DOC_ENTRY_SIZE = 8 + 2 * FIELD_COUNT;
+    public static final int TERM_BLOCK_SIZE = 16;
+
+    // Header field offsets
+    static final int OFF_MAGIC = 0;
+    static final int OFF_VERSION = 4;
+    static final int OFF_DOC_COUNT = 8;
+    static final int OFF_TERM_COUNT = 12;
+    static final int OFF_MAX_DOC_ID = 16;
+    static final int OFF_TERM_INDEX = 20;
+    static final int OFF_TERM_TABLE = 24;
+    static final int OFF_DOC_TABLE = 28;
+    static final int OFF_TERM_BYTES = 32;
+    static final int OFF_POSTINGS = 36;
+    static final int OFF_VECTORS = 40;
+
+    // Term entry field offsets
+    static final int ENTRY_DOC_FREQ = 0;
+    static final int ENTRY_POSTINGS = 4;
+    static final int ENTRY_IDF = 8;
+    static final int ENTRY_MAX_IMPACT = 16;
+    static final int ENTRY_MAX_FREQ = 20;
+    static final int ENTRY_MIN_DOC_LENGTH = 24;
+
+    // Doc entry field offsets
+    static final int DOC_VECTOR = 0;
+    static final int DOC_NORM = 4;
+    static final int DOC_FIELD_LENGTHS = 8;
+
+    private IndexFormat() {}
+}
@@ -2,43 +2,124 @@ package storage;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import domain.SearchIndexData;
+import domain.UpdateManifest;
 import utils.StorageUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 public class IndexLoader {
+    public static final String INDEX_FILE_NAME = "index_data.bin";
+    // Downloaded indexes are installed as index_data-<version>.bin; the installed manifest names the current one
+    private static final String INSTALLED_PREFIX = "index_data-";
+    private static final String INSTALLED_MANIFEST = "manifest.json";
+
     private final String resourcePath;
 
     public IndexLoader(String resourcePath) {
         this.resourcePath = resourcePath;
     }
 
-    public SearchIndexData loadIndex() {
-        ObjectMapper mapper = new ObjectMapper();
+    /**
+     * The AppData file name an index downloaded for this version is installed under. The running
+     * engine keeps its index mapped, and a mapped file cannot be replaced on Windows, so an update
+     * never writes over it: it adds a new file and the next load switches to it.
+     */
+    public static String installedFileName(String version) {
+        return INSTALLED_PREFIX + version.replaceAll("[^A-Za-z0-9._-]", "_") + ".bin";
+    }
 
-        // 1️⃣ Try loading from AppData (Updated version)
-        File updatedFile = new File(StorageUtils.getAppDataDir(), "index.json");
+    public MappedIndex loadIndex() {
+        // 1️⃣ Try mapping the AppData copy (Updated version)
+        File updatedFile = installedIndexFile();
         if (updatedFile.exists()) {
             try {
                 System.out.println("📂 Loading index from local update...");
-                return mapper.readValue(updatedFile, SearchIndexData.class);
-            } catch (IOException e) {
-                e.printStackTrace(); // Fallback if file is corrupt
+                return MappedIndex.open(updatedFile.toPath());
+            } catch (IOException | IllegalArgumentException e) {
+                e.printStackTrace(); // Fallback if file is corrupt or from an older format
             }
         }
 
         // 2️⃣ Fallback to classpath resource (Factory default)
         System.out.println("📦 Loading factory default index...");
-        try (InputStream inputStream = getClass().getResourceAsStream(resourcePath)) {
-            if (inputStream == null) {
-                throw new RuntimeException("Resource not found: " + resourcePath);
-            }
-            return mapper.readValue(inputStream, SearchIndexData.class);
+        try {
+            return MappedIndex.open(resolveResourceFile());
         } catch (IOException e) {
             e.printStackTrace();
             return null; // Or throw RuntimeException depending on your preference
         }
     }
+
+    // The index named by the installed manifest, or index_data.bin as installed by older versions
+    private File installedIndexFile() {
+        File appData = new File(StorageUtils.getAppDataDir());
+        File manifestFile = new File(appData, INSTALLED_MANIFEST);
+        if (manifestFile.exists()) {
+            try {
+                String name = new ObjectMapper().readValue(manifestFile, UpdateManifest.class).getIndexFile();
+                if (name != null) {
+                    File current = new File(appData, name);
+                    deleteOldIndexes(appData, current);
+                    return current;
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); // Keeps every index file; UpdateService re-checks the hashes
+            }
+        }
+        return new File(appData, INDEX_FILE_NAME);
+    }
+
+    // Indexes replaced by a later update; one still mapped by the engine being swapped out stays until a later load
+    private static void deleteOldIndexes(File appData, File current) {
+        File[] files = appData.listFiles((dir, name) -> name.equals(INDEX_FILE_NAME)
+                || name.startsWith(INSTALLED_PREFIX) && name.endsWith(".bin"));
+        if (files == null) return;
+        for (File file : files) {
+            if (file.getName().equals(current.getName())) continue;
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                // Still mapped; retried on the next load
+            }
+        }
+    }
+
+    /**
+     * Debug/export path: reads an index that was exported as JSON by IndexerMain --json.
+     */
+    public SearchIndexData loadJsonIndex(File jsonFile) throws IOException {
+        return new ObjectMapper().readValue(jsonFile, SearchIndexData.class);
+    }
+
+    /**
+     * A resource can only be memory-mapped when it is a plain file. Inside the
+     * shaded jar it is copied once to a temp file and mapped from there.
+     */
+    private Path resolveResourceFile() throws IOException {
+        URL url = getClass().getResource(resourcePath);
+        if (url == null) {
+            throw new RuntimeException("Resource not found: " + resourcePath);
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return Path.of(url.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+
+        Path temp = Files.createTempFile("devshelf-index", ".bin");
+        temp.toFile().deleteOnExit();
+        try (InputStream inputStream = url.openStream()) {
+            Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return temp;
+    }
 }
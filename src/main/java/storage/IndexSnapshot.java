@@ -0,0 +1,152 @@
+package storage;
+
+import domain.PostingList;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, point-in-time view over every live segment of a SegmentedIndex.
+ * A query grabs one snapshot and does all of its reads against it, so a
+ * concurrent catalog edit or background merge never changes the data under it.
+ *
+ * IDF is always computed from the live statistics of the whole snapshot
+ * (live docs, and per-term doc frequency minus tombstoned postings), so it stays
+ * correct after adds and deletes without touching the base segment.
+ */
+public class IndexSnapshot {
+
+    /**
+     * One segment plus the tombstones recorded against it. Never mutated once published.
+     */
+    public static final class Segment {
+        @Getter
+        private final String name;
+        @Getter
+        private final MappedIndex index;
+        private final BitSet deleted;
+
+        public Segment(String name, MappedIndex index, BitSet deleted) {
+            this.name = name;
+            this.index = index;
+            this.deleted = deleted;
+        }
+
+        public boolean isLive(int docId) {
+            return index.hasDocument(docId) && !deleted.get(docId);
+        }
+
+        public int getLiveDocCount() {
+            return index.getDocCount() - deleted.cardinality();
+        }
+
+        public BitSet copyDeleted() {
+            return (BitSet) deleted.clone();
+        }
+    }
+
+    @Getter
+    private final long version;
+    @Getter
+    private final List<Segment> segments;
+    @Getter
+    private final int liveDocCount;
+    @Getter
+    private final int maxDocId;
+    // average token count per BookField over the live documents, for BM25-style length normalization
+    private final double[] averageFieldLengths;
+    @Getter
+    private final double averageDocLength;
+    // term -> number of its postings that sit on tombstoned documents
+    private final Map<String, Integer> deletedPostings;
+
+    public IndexSnapshot(long version, List<Segment> segments, Map<String, Integer> deletedPostings) {
+        this.version = version;
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+        this.deletedPostings = Map.copyOf(deletedPostings);
+
+        int live = 0;
+        int maxId = -1;
+        long[] fieldTotals = new long[IndexFormat.FIELD_COUNT];
+        for (Segment segment : segments) {
+            live += segment.getLiveDocCount();
+            maxId = Math.max(maxId, segment.getIndex().getMaxDocId());
+
+            long[] totals = segment.getIndex().fieldLengthTotals();
+            BitSet deleted = segment.deleted;
+            for (int docId = deleted.nextSetBit(0); docId >= 0; docId = deleted.nextSetBit(docId + 1)) {
+                if (!segment.getIndex().hasDocument(docId)) continue;
+                for (int f = 0; f < totals.length; f++) totals[f] -= segment.getIndex().fieldLength(docId, f);
+            }
+            for (int f = 0; f < totals.length; f++) fieldTotals[f] += totals[f];
+        }
+        this.liveDocCount = live;
+        this.maxDocId = maxId;
+
+        this.averageFieldLengths = new double[fieldTotals.length];
+        double docLengthTotal = 0;
+        for (int f = 0; f < fieldTotals.length; f++) {
+            averageFieldLengths[f] = live == 0 ? 0.0 : (double) fieldTotals[f] / live;
+            docLengthTotal += fieldTotals[f];
+        }
+        this.averageDocLength = live == 0 ? 0.0 : docLengthTotal / live;
+    }
+
+    public Map<String, Integer> copyDeletedPostings() {
+        return new HashMap<>(deletedPostings);
+    }
+
+    public double averageFieldLength(int field) {
+        return averageFieldLengths[field];
+    }
+
+    public int docFreq(String term) {
+        int df = 0;
+        for (Segment segment : segments) {
+            int termId = segment.getIndex().termId(term);
+            if (termId >= 0) df += segment.getIndex().docFreq(termId);
+        }
+        return df - deletedPostings.getOrDefault(term, 0);
+    }
+
+    public double idf(String term) {
+        int df = docFreq(term);
+        if (df <= 0 || liveDocCount == 0) return 0.0;
+        return Math.log10( (double) liveDocCount / df );
+    }
+
+    /**
+     * Live postings of a term across all segments. Doc ids are unique across
+     * segments because an update always tombstones the previous copy.
+     */
+    public PostingList postings(String term) {
+        List<PostingList> live = new ArrayList<>();
+        for (Segment segment : segments) {
+            int termId = segment.getIndex().termId(term);
+            if (termId < 0) continue;
+            PostingList postings = segment.getIndex().postings(termId);
+            PostingList kept = new PostingList(postings.size(), 8);
+            for (int i = 0; i < postings.size(); i++) {
+                if (!segment.deleted.get(postings.docId(i))) kept.add(postings, i);
+            }
+            live.add(kept);
+        }
+        return PostingList.merge(live);
+    }
+
+    /**
+     * Returns the segment holding the live copy of a document, or null if it is deleted/unknown.
+     */
+    public Segment segmentOf(int docId) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            if (segment.isLive(docId)) return segment;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,323 @@
+package storage;
+
+import domain.DocVector;
+import domain.PostingList;
+import domain.SearchIndexData;
+import domain.TermDictionary;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only view over a binary index file (see {@link IndexFormat}).
+ * Nothing is decoded up front: term lookups binary search the front-coded term blocks
+ * and postings/vectors are decoded only for the terms and documents a query touches.
+ * Every read uses absolute offsets, so one instance can be shared freely.
+ */
+public class MappedIndex {
+
+    private final ByteBuffer buffer;
+
+    @Getter
+    private final int docCount;
+    @Getter
+    private final int termCount;
+    @Getter
+    private final int maxDocId;
+
+    private final int blockCount;
+    private final long[] fieldLengthTotals;
+
+    private final int termIndexOffset;
+    private final int termTableOffset;
+    private final int docTableOffset;
+    private final int termBytesOffset;
+    private final int postingsOffset;
+    private final int vectorsOffset;
+
+    private MappedIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+
+        if (buffer.capacity() < IndexFormat.HEADER_SIZE || buffer.getInt(IndexFormat.OFF_MAGIC) != IndexFormat.MAGIC) {
+            throw new IllegalArgumentException("Not a DevShelf binary index");
+        }
+        int version = buffer.getInt(IndexFormat.OFF_VERSION);
+        if (version != IndexFormat.VERSION) {
+            throw new IllegalArgumentException("Unsupported index version " + version
+                    + " (expected " + IndexFormat.VERSION + ")");
+        }
+
+        this.docCount = buffer.getInt(IndexFormat.OFF_DOC_COUNT);
+        this.termCount = buffer.getInt(IndexFormat.OFF_TERM_COUNT);
+        this.maxDocId = buffer.getInt(IndexFormat.OFF_MAX_DOC_ID);
+        this.blockCount = (termCount + IndexFormat.TERM_BLOCK_SIZE - 1) / IndexFormat.TERM_BLOCK_SIZE;
+        this.termIndexOffset = buffer.getInt(IndexFormat.OFF_TERM_INDEX);
+        this.termTableOffset = buffer.getInt(IndexFormat.OFF_TERM_TABLE);
+        this.docTableOffset = buffer.getInt(IndexFormat.OFF_DOC_TABLE);
+        this.termBytesOffset = buffer.getInt(IndexFormat.OFF_TERM_BYTES);
+        this.postingsOffset = buffer.getInt(IndexFormat.OFF_POSTINGS);
+        this.vectorsOffset = buffer.getInt(IndexFormat.OFF_VECTORS);
+
+        this.fieldLengthTotals = new long[IndexFormat.FIELD_COUNT];
+        for (int docId = 0; docId <= maxDocId; docId++) {
+            if (!hasDocument(docId)) continue;
+            for (int f = 0; f < fieldLengthTotals.length; f++) fieldLengthTotals[f] += fieldLength(docId, f);
+        }
+    }
+
+    public static MappedIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new MappedIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static MappedIndex wrap(byte[] bytes) {
+        return new MappedIndex(ByteBuffer.wrap(bytes));
+    }
+
+    public int getSizeInBytes() {
+        return buffer.capacity();
+    }
+
+    // --- Term dictionary ---
+
+    /**
+     * Returns the id (dictionary ordinal) of a term, or -1 if it is not indexed.
+     */
+    public int termId(String term) {
+        return termId(term.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Same as {@link #termId(String)} for a term already encoded as UTF-8, so a
+     * query can encode each term once and look it up in every segment.
+     */
+    public int termId(byte[] key) {
+        if (termCount == 0) return -1;
+
+        // 1. Binary search the block heads (stored in full) for the last head <= key
+        int lo = 0, hi = blockCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (compareBlockHead(mid, key) <= 0) lo = mid;
+            else hi = mid - 1;
+        }
+
+        // 2. Decode the front-coded block until the key is found or passed
+        int first = lo * IndexFormat.TERM_BLOCK_SIZE;
+        int last = Math.min(termCount, first + IndexFormat.TERM_BLOCK_SIZE);
+        VarInt.Reader in = new VarInt.Reader(buffer, termBytesOffset + blockInt(lo));
+        byte[] current = new byte[Math.max(32, key.length)];
+        int length = 0;
+        for (int termId = first; termId < last; termId++) {
+            int shared = termId == first ? 0 : in.readInt();
+            int suffix = in.readInt();
+            length = shared + suffix;
+            if (length > current.length) current = Arrays.copyOf(current, length * 2);
+            buffer.get(in.skip(suffix), current, shared, suffix);
+
+            int cmp = Arrays.compareUnsigned(current, 0, length, key, 0, key.length);
+            if (cmp == 0) return termId;
+            if (cmp > 0) return -1;
+        }
+        return -1;
+    }
+
+    public String term(int termId) {
+        int block = termId / IndexFormat.TERM_BLOCK_SIZE;
+        int first = block * IndexFormat.TERM_BLOCK_SIZE;
+        VarInt.Reader in = new VarInt.Reader(buffer, termBytesOffset + blockInt(block));
+        byte[] current = new byte[32];
+        int length = 0;
+        for (int id = first; id <= termId; id++) {
+            int shared = id == first ? 0 : in.readInt();
+            int suffix = in.readInt();
+            length = shared + suffix;
+            if (length > current.length) current = Arrays.copyOf(current, length * 2);
+            buffer.get(in.skip(suffix), current, shared, suffix);
+        }
+        return new String(current, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public int docFreq(int termId) {
+        return entryInt(termId, IndexFormat.ENTRY_DOC_FREQ);
+    }
+
+    public double idf(int termId) {
+        return buffer.getDouble(termTableOffset + termId * IndexFormat.TERM_ENTRY_SIZE + IndexFormat.ENTRY_IDF);
+    }
+
+    /**
+     * Largest weight / doc norm of the term in any document: an upper bound of its cosine impact.
+     */
+    public float maxImpact(int termId) {
+        return buffer.getFloat(termTableOffset + termId * IndexFormat.TERM_ENTRY_SIZE + IndexFormat.ENTRY_MAX_IMPACT);
+    }
+
+    /**
+     * Largest frequency of the term in any document.
+     */
+    public int maxFreq(int termId) {
+        return entryInt(termId, IndexFormat.ENTRY_MAX_FREQ);
+    }
+
+    /**
+     * Shortest document (in tokens) that contains the term.
+     */
+    public int minDocLength(int termId) {
+        return entryInt(termId, IndexFormat.ENTRY_MIN_DOC_LENGTH);
+    }
+
+    public double idf(String term) {
+        int termId = termId(term);
+        return termId < 0 ? 0.0 : idf(termId);
+    }
+
+    // --- Postings ---
+
+    public PostingList postings(String term) {
+        int termId = termId(term);
+        return termId < 0 ? new PostingList(0, 0) : postings(termId);
+    }
+
+    public PostingList postings(int termId) {
+        int df = docFreq(termId);
+        PostingList postings = new PostingList(df, df * 2);
+        VarInt.Reader in = new VarInt.Reader(buffer, postingsOffset + entryInt(termId, IndexFormat.ENTRY_POSTINGS));
+
+        int[] positions = new int[8];
+        int docId = 0;
+        for (int i = 0; i < df; i++) {
+            docId += in.readInt();
+            int freq = in.readInt();
+            if (freq > positions.length) positions = new int[Integer.highestOneBit(freq) << 1];
+            int pos = 0;
+            for (int j = 0; j < freq; j++) {
+                pos += in.readInt();
+                positions[j] = pos;
+            }
+            postings.add(docId, positions, freq);
+        }
+        return postings;
+    }
+
+    // --- Document vectors ---
+
+    public boolean hasDocument(int docId) {
+        return docId >= 0 && docId <= maxDocId && docInt(docId, IndexFormat.DOC_VECTOR) >= 0;
+    }
+
+    /**
+     * Euclidean norm of the document's TF-IDF vector, precomputed by the writer.
+     */
+    public float norm(int docId) {
+        return buffer.getFloat(docTableOffset + docId * IndexFormat.DOC_ENTRY_SIZE + IndexFormat.DOC_NORM);
+    }
+
+    /**
+     * Number of tokens the document has in one BookField (by ordinal).
+     */
+    public int fieldLength(int docId, int field) {
+        int at = docTableOffset + docId * IndexFormat.DOC_ENTRY_SIZE + IndexFormat.DOC_FIELD_LENGTHS;
+        return buffer.getShort(at + field * Short.BYTES) & 0xFFFF;
+    }
+
+    public int[] fieldLengths(int docId) {
+        int[] lengths = new int[IndexFormat.FIELD_COUNT];
+        for (int f = 0; f < lengths.length; f++) lengths[f] = fieldLength(docId, f);
+        return lengths;
+    }
+
+    /**
+     * Total number of indexed tokens in the document (all fields).
+     */
+    public int docLength(int docId) {
+        int length = 0;
+        for (int f = 0; f < IndexFormat.FIELD_COUNT; f++) length += fieldLength(docId, f);
+        return length;
+    }
+
+    /**
+     * Sum of every document's length per field, for the average field lengths.
+     */
+    public long[] fieldLengthTotals() {
+        return fieldLengthTotals.clone();
+    }
+
+    /**
+     * Decodes the TF-IDF vector of one document (ids of this index's dictionary),
+     * or null if the id is unknown.
+     */
+    public DocVector vector(int docId) {
+        if (!hasDocument(docId)) return null;
+
+        VarInt.Reader in = new VarInt.Reader(buffer, vectorsOffset + docInt(docId, IndexFormat.DOC_VECTOR));
+        int size = in.readInt();
+        int[] termIds = new int[size];
+        float[] weights = new float[size];
+        int termId = 0;
+        for (int i = 0; i < size; i++) {
+            termId += in.readInt();
+            termIds[i] = termId;
+            weights[i] = in.readFloat();
+        }
+        return new DocVector(termIds, weights);
+    }
+
+    /**
+     * Materializes the whole index back into the JSON-friendly model.
+     * Only meant for exporting/debugging, never for the query path.
+     */
+    public SearchIndexData toSearchIndexData() {
+        Map<String, PostingList> invertedIndex = new HashMap<>();
+        double[] idfScores = new double[termCount];
+        for (int termId = 0; termId < termCount; termId++) {
+            invertedIndex.put(term(termId), postings(termId));
+            idfScores[termId] = idf(termId);
+        }
+
+        Map<Integer, DocVector> docVectors = new HashMap<>();
+        Map<Integer, int[]> fieldLengths = new HashMap<>();
+        for (int docId = 0; docId <= maxDocId; docId++) {
+            DocVector vector = vector(docId);
+            if (vector == null) continue;
+            docVectors.put(docId, vector);
+            fieldLengths.put(docId, fieldLengths(docId));
+        }
+        return new SearchIndexData(invertedIndex, TermDictionary.of(invertedIndex.keySet()),
+                docVectors, idfScores, fieldLengths);
+    }
+
+    private int entryInt(int termId, int field) {
+        return buffer.getInt(termTableOffset + termId * IndexFormat.TERM_ENTRY_SIZE + field);
+    }
+
+    private int docInt(int docId, int field) {
+        return buffer.getInt(docTableOffset + docId * IndexFormat.DOC_ENTRY_SIZE + field);
+    }
+
+    private int blockInt(int block) {
+        return buffer.getInt(termIndexOffset + block * Integer.BYTES);
+    }
+
+    private int compareBlockHead(int block, byte[] key) {
+        VarInt.Reader in = new VarInt.Reader(buffer, termBytesOffset + blockInt(block));
+        int length = in.readInt();
+        int start = in.position();
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(buffer.get(start + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(length, key.length);
+    }
+}
@@ -0,0 +1,66 @@
+package storage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128-style variable length integers used by the binary index.
+ * Small numbers (doc gaps, frequencies, position gaps) take a single byte.
+ */
+public final class VarInt {
+
+    private VarInt() {}
+
+    public static void write(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Sequential reader over absolute buffer positions, so the shared
+     * mapped buffer's own position is never touched.
+     */
+    public static final class Reader {
+        private final ByteBuffer buffer;
+        private int pos;
+
+        public Reader(ByteBuffer buffer, int pos) {
+            this.buffer = buffer;
+            this.pos = pos;
+        }
+
+        public int readInt() {
+            int b = buffer.get(pos++);
+            int value = b & 0x7F;
+            int shift = 7;
+            while ((b & 0x80) != 0) {
+                b = buffer.get(pos++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            }
+            return value;
+        }
+
+        public float readFloat() {
+            float value = buffer.getFloat(pos);
+            pos += Float.BYTES;
+            return value;
+        }
+
+        /**
+         * Skips n raw bytes and returns the position they started at.
+         */
+        public int skip(int n) {
+            int start = pos;
+            pos += n;
+            return start;
+        }
+
+        public int position() {
+            return pos;
+        }
+    }
+}
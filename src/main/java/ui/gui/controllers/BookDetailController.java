@@ -1,6 +1,7 @@
 package ui.gui.controllers;
 
 import domain.Book;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -72,6 +73,16 @@ public class BookDetailController {
 
         if (this.service == null || this.book == null) return;
 
+        if (!service.isRecommendationsReady()) {
+            // Still being built at startup: fill the list in as soon as it is there
+            recommendationsContainer.getChildren().add(new Label("⏳ Preparing recommendations..."));
+            Book waitingFor = this.book;
+            service.whenRecommendationsReady().thenRun(() -> Platform.runLater(() -> {
+                if (this.book == waitingFor) loadRecommendations();
+            }));
+            return;
+        }
+
         // Ask the "Brain" for related books
         List<Book> recommendations = service.getRecommendationsFor(this.book);
 
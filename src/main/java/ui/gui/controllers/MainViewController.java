@@ -15,7 +15,6 @@ import javafx.stage.Stage;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.MenuItem;
 import javafx.geometry.Side;
-import lombok.Setter;
 import ui.gui.services.DevShelfService;
 import ui.gui.services.DevShelfService.SearchResponse;
 
@@ -35,7 +34,6 @@ public class MainViewController {
     @FXML private ComboBox<String> categoryCombo;
     @FXML private ContextMenu suggestionsPopup = new ContextMenu();
 
-    @Setter
     private DevShelfService service;
 
     private List<Book> originalResults = new ArrayList<>();
@@ -50,18 +48,36 @@ public class MainViewController {
         sortCombo.setOnAction(e -> applySortAndFilter());
         categoryCombo.setOnAction(e -> applySortAndFilter());
 
-        javafx.application.Platform.runLater(() -> {
-            if (service != null) loadTrending();
-        });
+        // The engine is still loading in the background; see setService()
+        searchField.setDisable(true);
+        statusLabel.setText("⏳ Loading the catalog...");
 
         setupAutocomplete();
     }
 
+    /**
+     * Called (on the FX thread) once the engine can search: enables searching and shows trending books.
+     */
+    public void setService(DevShelfService service) {
+        this.service = service;
+        searchField.setDisable(false);
+        loadTrending();
+    }
+
+    /**
+     * Called (on the FX thread) if the engine could not be loaded: says so instead of "Loading...".
+     */
+    public void showStartupError(Throwable error) {
+        searchField.setDisable(true);
+        String reason = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        statusLabel.setText("❌ Could not load the catalog: " + reason + ". Please restart DevShelf.");
+    }
+
     private void setupAutocomplete() {
         suggestionsPopup.setAutoHide(true);
 
         searchField.textProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue == null || newValue.trim().isEmpty()) {
+            if (service == null || newValue == null || newValue.trim().isEmpty()) {
                 suggestionsPopup.hide();
                 return;
             }
@@ -99,20 +115,30 @@ public class MainViewController {
     }
 
     private void loadTrending() {
-        statusLabel.setText("🔥 Trending Books - Top Picks by Users");
-        List<Book> trending = service.getTrendingBooks();
+        if (service == null) return; // still loading
+
+        // Once books were opened this session, the ones related to all of them come first
+        List<Book> forYou = service.getSessionRecommendations();
+        List<Book> home = new ArrayList<>(forYou);
+        for (Book book : service.getTrendingBooks()) {
+            if (home.stream().noneMatch(b -> b.getBookId() == book.getBookId())) home.add(book);
+        }
+        statusLabel.setText(forYou.isEmpty()
+                ? "🔥 Trending Books - Top Picks by Users"
+                : "🎯 Picked for You (from the books you opened), then 🔥 Trending");
 
-        this.originalResults = trending;
-        this.currentDisplayList = trending;
+        this.originalResults = home;
+        this.currentDisplayList = home;
 
-        populateCategoryDropdown(trending);
-        displayBooks(trending);
+        populateCategoryDropdown(home);
+        displayBooks(home);
     }
 
 
     @FXML
     private void handleSearch() {
         suggestionsPopup.hide();
+        if (service == null) return; // still loading
 
         String query = searchField.getText();
         if (query == null || query.trim().isEmpty()) {
@@ -1,57 +1,85 @@
 package ui.gui.services;
 
+import core.EngineHolder;
+import core.EngineSnapshot;
 import domain.Book;
 import domain.SearchResult;
-import features.recommendation.Graph;
-import features.search.PhraseCompletion;
-import features.search.QueryProcessor;
-import features.search.ReRanker;
-import features.search.Suggester;
-import features.search.PhraseCompletion;
+import storage.IndexSnapshot;
 import utils.LoggingService; // (Moved to utils? Check your imports)
+import utils.LruCache;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
+/**
+ * What the GUI (and the HTTP API) ask of the engine. Every call takes the live
+ * {@link EngineSnapshot} once and uses only that, so a hot swap in the middle of
+ * a call never mixes old and new data.
+ */
 public class DevShelfService {
 
-    private final Map<Integer, Book> bookMap;
-    private final QueryProcessor queryProcessor;
-    private final ReRanker reRanker;
-    private final Suggester suggester;
+    private final EngineHolder engines;
     private final LoggingService loggingService;
-    private final Graph graph;
-private final PhraseCompletion phraseCompletion;
-    public DevShelfService(Map<Integer, Book> bookMap, QueryProcessor queryProcessor,
-                           ReRanker reRanker, Suggester suggester, Graph graph, LoggingService loggingService) {
-        this.bookMap = bookMap;
-        this.queryProcessor = queryProcessor;
-        this.reRanker = reRanker;
-        this.suggester = suggester;
-        this.graph = graph;
+
+    // Ranked results of recent searches, each valid only for the engine and index snapshot it came from
+    private static final int RESULT_CACHE_SIZE = 256;
+    private static final String SUGGESTION_KEY_PREFIX = "suggest:";
+    private final LruCache<String, CachedSearch> resultCache = new LruCache<>(RESULT_CACHE_SIZE);
+    private EngineSnapshot cachedEngine;
+    private IndexSnapshot cachedSnapshot;
+
+    // -Ddevshelf.recommendations=pagerank: "related books" by personalized PageRank instead of direct neighbors
+    private final boolean pageRankRecommendations =
+            "pagerank".equalsIgnoreCase(System.getProperty("devshelf.recommendations", "neighbors"));
+    // Books clicked this session, the latest last; the seeds of getSessionRecommendations()
+    private static final int SESSION_CLICKS = 20;
+    private final Deque<Integer> sessionClicks = new ArrayDeque<>();
+
+    public DevShelfService(EngineHolder engines, LoggingService loggingService) {
+        this.engines = engines;
         this.loggingService = loggingService;
-        phraseCompletion=new PhraseCompletion();
-        indexAllBooksForAutocomplete();
     }
 
     public SearchResponse search(String query) {
         System.out.println("🔍 GUI Processing Query: [" + query + "]");
+        EngineSnapshot engine = engines.current();
+        // Taken before searching: the results are at least this recent
+        IndexSnapshot snapshot = engine.getQueryProcessor().snapshot();
+        clearCacheIfStale(engine, snapshot);
+
+        // 1. Direct results, cached under the normalized (parsed + stemmed) query
+        String cacheKey = engine.getQueryProcessor().normalize(query);
+        CachedSearch cached = cachedSearch(cacheKey, engine, snapshot);
+        if (cached == null) {
+            cached = new CachedSearch(engine, snapshot, rankAndLoad(engine, engine.getQueryProcessor().search(query)), null);
+            resultCache.put(cacheKey, cached);
+        }
+        if (!cached.books.isEmpty()) {
+            return new SearchResponse(cached.books, false, query);
+        }
 
-        List<SearchResult> results = queryProcessor.search(query);
-        String usedQuery = query;
-        boolean isSuggestion = false;
-
-        if (results.isEmpty()) {
-            String suggestion = suggester.suggestSimilar(query);
+        // 2. Nothing found: the spelling suggestion depends on the exact text typed, so it is cached by that
+        String suggestionKey = SUGGESTION_KEY_PREFIX + query.trim().toLowerCase();
+        CachedSearch suggested = cachedSearch(suggestionKey, engine, snapshot);
+        if (suggested == null) {
+            String suggestion = engine.getSuggester().suggestSimilar(query);
+            List<Book> books = Collections.emptyList();
             if (suggestion != null) {
                 System.out.println("💡 Suggestion found: " + suggestion);
-                results = queryProcessor.search(suggestion);
-                usedQuery = suggestion;
-                isSuggestion = true;
+                books = rankAndLoad(engine, engine.getQueryProcessor().search(suggestion));
             }
+            suggested = new CachedSearch(engine, snapshot, books, suggestion);
+            resultCache.put(suggestionKey, suggested);
+        }
+        if (suggested.suggestion == null) {
+            return new SearchResponse(Collections.emptyList(), false, query);
         }
+        return new SearchResponse(suggested.books, true, suggested.suggestion);
+    }
 
-        List<SearchResult> rankedResults = reRanker.reRank(results, usedQuery);
+    private List<Book> rankAndLoad(EngineSnapshot engine, List<SearchResult> results) {
+        List<SearchResult> rankedResults = engine.getReRanker().reRank(results);
 
         System.out.println("📊 Top 5 Results (DocID : Score):");
         for (int i = 0; i < Math.min(5, rankedResults.size()); i++) {
@@ -61,34 +89,47 @@ private final PhraseCompletion phraseCompletion;
 
         List<Book> books = new ArrayList<>();
         for (SearchResult res : rankedResults) {
-            Book b = bookMap.get(res.getDocId());
+            Book b = engine.getBookMap().get(res.getDocId());
             if (b != null) {
                 books.add(b);
             }
         }
-
-        return new SearchResponse(books, isSuggestion, usedQuery);
+        return Collections.unmodifiableList(books);
     }
 
-    private void indexAllBooksForAutocomplete() {
-        for (Book book : bookMap.values()) {
-            String fullTitle = book.getTitle();
+    // A cached search, unless it was computed on another engine or index snapshot. A request still
+    // on the old engine can put its results after the swap, so clearing alone is not enough.
+    private CachedSearch cachedSearch(String key, EngineSnapshot engine, IndexSnapshot snapshot) {
+        CachedSearch cached = resultCache.get(key);
+        return cached != null && cached.engine == engine && cached.snapshot == snapshot ? cached : null;
+    }
 
-            String[] words = fullTitle.split("[\\s,]+");
+    /**
+     * Frees the cached searches of an older engine (swapped in by a reload) or index snapshot
+     * (a catalog edit or merge) once the first request sees the new one.
+     */
+    private synchronized void clearCacheIfStale(EngineSnapshot engine, IndexSnapshot snapshot) {
+        if (engine == cachedEngine && snapshot == cachedSnapshot) return;
+        if (engine.getGeneration() < cachedGeneration()) return; // a late request on the old engine
 
-            for (String word : words) {
-                String cleanWord = word.trim();
-                if (!cleanWord.isEmpty()) {
-                    phraseCompletion.insertWordAndTitle(cleanWord, fullTitle);
-                }
-            }
+        if (resultCache.size() > 0) {
+            System.out.println("♻️ Engine or index changed, clearing " + resultCache.size() + " cached searches | " + resultCache);
         }
+        resultCache.clear();
+        cachedEngine = engine;
+        cachedSnapshot = snapshot;
+    }
+
+    private long cachedGeneration() {
+        return cachedEngine == null ? Long.MIN_VALUE : cachedEngine.getGeneration();
     }
 
     public List<String> getAutoCompletions(String prefix) {
         if (prefix == null || prefix.isEmpty()) return Collections.emptyList();
+        EngineSnapshot engine = engines.current();
+        if (!engine.isAutocompleteReady()) return Collections.emptyList(); // still building at startup
 
-        List<String> allMatches = phraseCompletion.Complete(prefix, 50); // Get a larger sample
+        List<String> allMatches = engine.getPhraseCompletion().Complete(prefix, 50); // Get a larger sample
 
         String lowerPrefix = prefix.toLowerCase();
 
@@ -117,33 +158,95 @@ private final PhraseCompletion phraseCompletion;
                 .collect(Collectors.toList());
     }
 
+    public Book getBook(int bookId) {
+        return engines.current().getBookMap().get(bookId);
+    }
+
+    /**
+     * The "did you mean" title for a query, or null if nothing is close enough.
+     */
+    public String suggest(String query) {
+        return engines.current().getSuggester().suggestSimilar(query);
+    }
+
+    public boolean isRecommendationsReady() {
+        return engines.current().isGraphReady();
+    }
+
+    /**
+     * Completes once the recommendation graph is built (right away after startup).
+     */
+    public CompletableFuture<Void> whenRecommendationsReady() {
+        return engines.current().whenGraphReady().thenAccept(graph -> { });
+    }
+
+    /**
+     * Recommendations in the configured mode (-Ddevshelf.recommendations=neighbors|pagerank).
+     */
     public List<Book> getRecommendationsFor(Book book) {
+        if (pageRankRecommendations && engines.current().isPageRankReady()) return getRelatedBooks(book);
+        return getNeighborRecommendations(book);
+    }
+
+    /**
+     * The most similar books, blended with their popularity.
+     */
+    public List<Book> getNeighborRecommendations(Book book) {
         if (book == null) return Collections.emptyList();
+        EngineSnapshot engine = engines.current();
+        if (!engine.isGraphReady()) return Collections.emptyList(); // see whenRecommendationsReady()
 
-        List<String> relatedTitles = graph.recommendPopularBooks(
-                book.getTitle(),
+        List<Integer> relatedIds = engine.getGraph().recommendPopularBooks(
+                book.getBookId(),
                 5, // Get top 5
-                reRanker.getPopularityMap() // Re-use the map from the ReRanker
+                engine.getReRanker().getPopularityMap() // Re-use the map from the ReRanker
         );
+        return toBooks(engine, relatedIds);
+    }
 
-        return relatedTitles.stream()
-                .map(this::findBookByTitle) // Use our helper
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+    /**
+     * Related books by personalized PageRank from this book: also finds books a few
+     * similar steps away, not only its direct neighbors.
+     */
+    public List<Book> getRelatedBooks(Book book) {
+        if (book == null) return Collections.emptyList();
+        EngineSnapshot engine = engines.current();
+        if (!engine.isPageRankReady()) return Collections.emptyList();
+        return toBooks(engine, engine.getPageRank().recommend(book.getBookId(), 5));
     }
 
-    private Book findBookByTitle(String title) {
-        String normalizedTitle = title.toLowerCase().trim();
-        for (Book book : bookMap.values()) {
-            if (book.getTitle() != null && book.getTitle().toLowerCase().trim().equals(normalizedTitle)) {
-                return book;
-            }
+    /**
+     * Related books by personalized PageRank from several books at once.
+     */
+    public List<Book> getRelatedBooks(Collection<Integer> bookIds) {
+        EngineSnapshot engine = engines.current();
+        if (bookIds.isEmpty() || !engine.isPageRankReady()) return Collections.emptyList();
+        return toBooks(engine, engine.getPageRank().recommend(bookIds, 5));
+    }
+
+    /**
+     * Related books for everything clicked this session, for the GUI's home view. The
+     * session is this service's, so HTTP clients pass their own clicks as ?ids= instead.
+     */
+    public List<Book> getSessionRecommendations() {
+        List<Integer> clicked;
+        synchronized (sessionClicks) {
+            clicked = new ArrayList<>(sessionClicks);
         }
-        return null;
+        return getRelatedBooks(clicked);
+    }
+
+    private List<Book> toBooks(EngineSnapshot engine, List<Integer> ids) {
+        return ids.stream()
+                .map(engine.getBookMap()::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     public List<Book> getTrendingBooks() {
-        List<Integer> trendingIds = reRanker.getTopTrending(10);
+        EngineSnapshot engine = engines.current();
+        Map<Integer, Book> bookMap = engine.getBookMap();
+        List<Integer> trendingIds = engine.getReRanker().getTopTrending(10);
 
         List<Book> trendingBooks = new ArrayList<>();
         for (Integer id : trendingIds) {
@@ -164,6 +267,26 @@ private final PhraseCompletion phraseCompletion;
     public void logClick(String query, int bookId) {
         System.out.println("🖱️ Click Logged: BookID " + bookId + " for query '" + query + "'");
         loggingService.logClick(query, bookId);
+        synchronized (sessionClicks) {
+            sessionClicks.remove(bookId);
+            sessionClicks.addLast(bookId);
+            if (sessionClicks.size() > SESSION_CLICKS) sessionClicks.removeFirst();
+        }
+    }
+
+    // One cached search: the ranked books, plus the suggestion they were found with (if any)
+    private static final class CachedSearch {
+        final EngineSnapshot engine;
+        final IndexSnapshot snapshot;
+        final List<Book> books;
+        final String suggestion;
+
+        CachedSearch(EngineSnapshot engine, IndexSnapshot snapshot, List<Book> books, String suggestion) {
+            this.engine = engine;
+            this.snapshot = snapshot;
+            this.books = books;
+            this.suggestion = suggestion;
+        }
     }
 
     public static class SearchResponse {
@@ -0,0 +1,319 @@
+package ui.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import domain.Book;
+import ui.gui.services.DevShelfService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JSON API over the JDK's built-in HTTP server. Every endpoint is a thin wrapper
+ * around {@link DevShelfService}, so the server ranks, caches and logs exactly
+ * like the GUI does.
+ *
+ *   GET  /api/search?q=...&limit=20    ranked books (or the books of a "did you mean" suggestion)
+ *   GET  /api/autocomplete?prefix=...  up to 5 title completions
+ *   GET  /api/suggest?q=...            the spelling suggestion for a query, or null
+ *   GET  /api/recommendations?id=N     books related to book N (&mode=neighbors|pagerank, default as configured)
+ *   GET  /api/recommendations?ids=1,2  books related to all of them (e.g. a session's clicks), by PageRank
+ *   GET  /api/trending                 the most clicked books
+ *   POST /api/click                    {"query": "...", "bookId": N} -> 204
+ *
+ * Responses always carry a Content-Length, so HTTP/1.1 connections stay open for
+ * the next request (keep-alive), and bodies above GZIP_MIN_BYTES are gzipped for
+ * clients that accept it. Requests run on a bounded pool: virtual threads with a
+ * concurrency limit on Java 21+, otherwise a fixed pool of platform threads.
+ */
+public class DevShelfHttpServer {
+
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+    // Smaller bodies are not worth the gzip header and CPU
+    private static final int GZIP_MIN_BYTES = 1024;
+    // Requests waiting for a platform worker, per worker, before the dispatcher runs them itself
+    private static final int QUEUE_PER_WORKER = 16;
+
+    private final DevShelfService service;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService workers;
+
+    /**
+     * @param maxConcurrent most requests handled at the same time
+     */
+    public DevShelfHttpServer(DevShelfService service, int port, int maxConcurrent) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.workers = createWorkers(maxConcurrent);
+        server.setExecutor(boundedExecutor(workers, maxConcurrent));
+
+        server.createContext("/api/search", get(this::search));
+        server.createContext("/api/autocomplete", get(this::autocomplete));
+        server.createContext("/api/suggest", get(this::suggest));
+        server.createContext("/api/recommendations", get(this::recommendations));
+        server.createContext("/api/trending", get(params -> service.getTrendingBooks()));
+        server.createContext("/api/click", this::click);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("🌐 DevShelf API listening on port " + server.getAddress().getPort());
+    }
+
+    /**
+     * Stops accepting connections, gives running requests up to 'delaySeconds' to finish.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        workers.shutdown();
+        System.out.println("🛑 DevShelf API stopped.");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // --- Endpoints ---
+
+    private Object search(Map<String, String> params) {
+        String query = required(params, "q");
+        int limit = intParam(params, "limit", DEFAULT_LIMIT);
+        if (limit < 1) throw new ApiException(400, "Parameter 'limit' must be at least 1");
+        limit = Math.min(MAX_LIMIT, limit);
+        DevShelfService.SearchResponse response = service.search(query);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("query", query);
+        body.put("isSuggestion", response.isSuggestion);
+        body.put("successfulQuery", response.successfulQuery);
+        body.put("total", response.books.size());
+        body.put("books", response.books.subList(0, Math.min(limit, response.books.size())));
+        return body;
+    }
+
+    private Object autocomplete(Map<String, String> params) {
+        return service.getAutoCompletions(required(params, "prefix"));
+    }
+
+    private Object suggest(Map<String, String> params) {
+        return Collections.singletonMap("suggestion", service.suggest(required(params, "q")));
+    }
+
+    private Object recommendations(Map<String, String> params) {
+        if (params.containsKey("ids")) return service.getRelatedBooks(idsParam(params, "ids"));
+
+        int id = intParam(params, "id", -1);
+        Book book = service.getBook(id);
+        if (book == null) throw new ApiException(404, "No book with id " + id);
+        String mode = params.get("mode");
+        if (mode == null) return service.getRecommendationsFor(book);
+        switch (mode) {
+            case "neighbors":
+                return service.getNeighborRecommendations(book);
+            case "pagerank":
+                return service.getRelatedBooks(book);
+            default:
+                throw new ApiException(400, "Parameter 'mode' must be neighbors or pagerank");
+        }
+    }
+
+    private void click(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) throw new ApiException(405, "Use POST");
+            JsonNode body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = mapper.readTree(in);
+            } catch (IOException e) {
+                throw new ApiException(400, "Body must be JSON: {\"query\": \"...\", \"bookId\": N}");
+            }
+            if (body == null || !body.path("bookId").canConvertToInt()) {
+                throw new ApiException(400, "Missing bookId");
+            }
+            service.logClick(body.path("query").asText(""), body.get("bookId").asInt());
+            exchange.sendResponseHeaders(204, -1);
+        } catch (ApiException e) {
+            sendError(exchange, e.status, e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("❌ " + exchange.getRequestURI() + " failed: " + e);
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // --- Plumbing ---
+
+    private interface Endpoint {
+        Object handle(Map<String, String> params);
+    }
+
+    // A client mistake that is answered with its status code instead of a 500
+    private static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // GET-only JSON endpoint: parses the query string and serializes whatever the endpoint returns
+    private HttpHandler get(Endpoint endpoint) {
+        return exchange -> {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) throw new ApiException(405, "Use GET");
+                Object result = endpoint.handle(queryParams(exchange.getRequestURI().getRawQuery()));
+                send(exchange, 200, mapper.writeValueAsBytes(result));
+            } catch (ApiException e) {
+                sendError(exchange, e.status, e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("❌ " + exchange.getRequestURI() + " failed: " + e);
+                sendError(exchange, 500, "Internal error");
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, mapper.writeValueAsBytes(Collections.singletonMap("error", message)));
+    }
+
+    // Fixed-length (optionally gzipped) response, which keeps the connection reusable
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (body.length >= GZIP_MIN_BYTES && acceptsGzip(exchange)) {
+            body = gzip(body);
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static boolean acceptsGzip(HttpExchange exchange) {
+        for (String value : exchange.getRequestHeaders().getOrDefault("Accept-Encoding", List.of())) {
+            if (value.toLowerCase().contains("gzip")) return true;
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(body);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, String> queryParams(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return params;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.putIfAbsent(key, value);
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) throw new ApiException(400, "Missing parameter '" + name + "'");
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int fallback) {
+        String value = params.get(name);
+        if (value == null) return fallback;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Parameter '" + name + "' must be a number");
+        }
+    }
+
+    private static List<Integer> idsParam(Map<String, String> params, String name) {
+        List<Integer> ids = new ArrayList<>();
+        for (String part : required(params, name).split(",")) {
+            if (part.isBlank()) continue;
+            try {
+                ids.add(Integer.parseInt(part.trim()));
+            } catch (NumberFormatException e) {
+                throw new ApiException(400, "Parameter '" + name + "' must be comma-separated numbers");
+            }
+        }
+        return ids;
+    }
+
+    // --- Worker pool ---
+
+    /**
+     * Virtual threads on Java 21+ (looked up reflectively, the build targets 17),
+     * a fixed pool of platform threads otherwise.
+     */
+    private static ExecutorService createWorkers(int maxConcurrent) {
+        try {
+            ExecutorService virtual = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            System.out.println("🧵 Serving requests on virtual threads (max " + maxConcurrent + " at once).");
+            return virtual;
+        } catch (ReflectiveOperationException e) {
+            System.out.println("🧵 Serving requests on " + maxConcurrent + " worker threads.");
+            AtomicInteger count = new AtomicInteger();
+            // Full queue: the dispatcher runs the request itself, which slows down accepting new ones
+            return new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(maxConcurrent * QUEUE_PER_WORKER),
+                    task -> {
+                        Thread thread = new Thread(task, "devshelf-http-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+
+    // Virtual threads are unbounded, so a semaphore caps how many requests run at once
+    private static Executor boundedExecutor(ExecutorService workers, int maxConcurrent) {
+        if (workers instanceof ThreadPoolExecutor) return workers;
+        Semaphore permits = new Semaphore(maxConcurrent);
+        return task -> workers.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+}
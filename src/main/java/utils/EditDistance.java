@@ -0,0 +1,139 @@
+package utils;
+
+/**
+ * Levenshtein distance without allocating per call.
+ *
+ * When the shorter string has at most 64 chars it is computed with Myers' bit-parallel
+ * algorithm: a whole column of the DP table is held as +1/-1 bit vectors in a few longs,
+ * so a comparison costs O(n) word operations instead of O(m * n) cells. Longer pairs use
+ * a DP over two reused rows, restricted to the band of cells that can stay within the
+ * bound. {@link #distance(CharSequence, CharSequence, int)} stops as soon as the distance
+ * is known to exceed the bound, which is all a caller looking for the best match needs.
+ *
+ * Keeps scratch arrays between calls, so an instance must not be shared between threads
+ * (give every thread its own, e.g. through a ThreadLocal).
+ */
+public final class EditDistance {
+
+    public static final int MAX_BIT_PARALLEL_LENGTH = 64;
+    private static final int ASCII = 128;
+
+    // Myers: per ASCII char, the positions where it occurs in the pattern (other chars are looked up)
+    private final long[] peq = new long[ASCII];
+    // Banded DP: the previous and current row
+    private int[] previousRow = new int[64];
+    private int[] currentRow = new int[64];
+
+    /**
+     * The exact edit distance.
+     */
+    public int distance(CharSequence a, CharSequence b) {
+        return distance(a, b, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * The edit distance if it is at most maxDistance, otherwise maxDistance + 1.
+     */
+    public int distance(CharSequence a, CharSequence b, int maxDistance) {
+        if (a == null) a = "";
+        if (b == null) b = "";
+        // The pattern is the shorter one; the distance is symmetric
+        CharSequence pattern = a.length() <= b.length() ? a : b;
+        CharSequence text = pattern == a ? b : a;
+        int m = pattern.length();
+        int n = text.length();
+
+        if (n - m > maxDistance) return maxDistance + 1; // that many insertions at least
+        if (m == 0) return n;
+        if (m <= MAX_BIT_PARALLEL_LENGTH) return myers(pattern, text, maxDistance);
+        return banded(pattern, text, maxDistance);
+    }
+
+    // Hyyrö's formulation of Myers' algorithm for the global distance (the top row counts up from 0)
+    private int myers(CharSequence pattern, CharSequence text, int maxDistance) {
+        int m = pattern.length();
+        int n = text.length();
+        for (int i = 0; i < m; i++) {
+            char c = pattern.charAt(i);
+            if (c < ASCII) peq[c] |= 1L << i;
+        }
+
+        long pv = -1L; // vertical deltas of the current column: all +1
+        long mv = 0L;
+        long last = 1L << (m - 1);
+        int score = m;
+        for (int j = 0; j < n; j++) {
+            long eq = matches(pattern, text.charAt(j));
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0) score++;
+            else if ((mh & last) != 0) score--;
+
+            // Every remaining text char can lower the score by one at most
+            if (score - (n - 1 - j) > maxDistance) {
+                score = maxDistance + 1;
+                break;
+            }
+            ph = (ph << 1) | 1L;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+        }
+
+        for (int i = 0; i < m; i++) {
+            char c = pattern.charAt(i);
+            if (c < ASCII) peq[c] = 0L;
+        }
+        return Math.min(score, maxDistance + 1);
+    }
+
+    private long matches(CharSequence pattern, char c) {
+        if (c < ASCII) return peq[c];
+        long eq = 0L;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == c) eq |= 1L << i;
+        }
+        return eq;
+    }
+
+    // Two-row DP over the cells within maxDistance of the diagonal; stops once a whole row is past it
+    private int banded(CharSequence a, CharSequence b, int maxDistance) {
+        int m = a.length();
+        int n = b.length();
+        int band = Math.min(maxDistance, Math.max(m, n));
+        int outside = band + 1;
+        if (previousRow.length < n + 1) {
+            previousRow = new int[n + 1];
+            currentRow = new int[n + 1];
+        }
+        int[] previous = previousRow;
+        int[] current = currentRow;
+
+        for (int j = 0; j <= n; j++) previous[j] = Math.min(j, outside);
+        for (int i = 1; i <= m; i++) {
+            int from = Math.max(1, i - band);
+            int to = Math.min(n, i + band);
+            current[0] = Math.min(i, outside);
+            if (from > 1) current[from - 1] = outside;
+            int rowMin = from == 1 ? current[0] : outside;
+
+            char c = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = c == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(previous[j - 1] + cost, Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = Math.min(value, outside);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (to < n) current[to + 1] = outside;
+            if (rowMin > band) return maxDistance + 1;
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        int result = previous[n];
+        return result > maxDistance ? maxDistance + 1 : result;
+    }
+}
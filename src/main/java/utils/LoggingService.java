@@ -16,7 +16,8 @@ public class LoggingService {
         this.mapper = new ObjectMapper();
     }
 
-    public void logClick(String query, int clickedDocId) {
+    // synchronized: concurrent appends (e.g. from the HTTP server) must not interleave lines
+    public synchronized void logClick(String query, int clickedDocId) {
         LogEntry entry = new LogEntry(query, clickedDocId);
 
         // --- Step 1: Try to create the JSON string ---
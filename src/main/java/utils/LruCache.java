@@ -0,0 +1,69 @@
+package utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small bounded cache that evicts the least recently used entry once it is full,
+ * and counts hits and misses so its usefulness can be checked from the logs.
+ * All methods are synchronized; entries are meant to be immutable.
+ */
+public class LruCache<K, V> {
+
+    private final int capacity;
+    private final LinkedHashMap<K, V> entries;
+    private long hits;
+    private long misses;
+
+    public LruCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        // access order: every get() moves the entry to the young end
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * The cached value, or null (counted as a miss) if there is none.
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) misses++;
+        else hits++;
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d/%d entries, %d hits, %d misses (%.1f%% hit rate)",
+                entries.size(), capacity, hits, misses, hitRate() * 100);
+    }
+}
@@ -0,0 +1,181 @@
+package utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded token -> stem cache shared by every {@link TextProcessor}, so indexing
+ * and querying skip the Snowball stemmer for words they have seen before.
+ *
+ * Two-way set associative: a token can only live in the two slots of the bucket its
+ * hash points to; a new token goes to the front of the bucket and pushes out the
+ * older of the two when both are taken. Lookups take the token as a slice of
+ * the tokenizer's char buffer, so a hit allocates nothing. Entries are immutable
+ * and published with a single reference write, which makes the cache safe to use
+ * from many threads without locks (at worst two threads stem the same word).
+ *
+ * The contents can be saved next to the index and loaded at startup, so even the
+ * first queries of a session find the catalog's vocabulary already stemmed.
+ */
+public class StemCache {
+
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    private static final StemCache SHARED = new StemCache(DEFAULT_CAPACITY);
+
+    private final Entry[] slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static final class Entry {
+        final char[] token;
+        final String stem;
+
+        Entry(char[] token, String stem) {
+            this.token = token;
+            this.stem = stem;
+        }
+    }
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two (at least one bucket of two)
+     */
+    public StemCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * The process-wide cache used by TextProcessors that are not given one.
+     */
+    public static StemCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * The cached stem of chars[0, length), or null (counted as a miss).
+     */
+    public String get(char[] chars, int length) {
+        int bucket = hash(chars, length) & mask & ~1;
+        for (int slot = bucket; slot <= bucket + 1; slot++) {
+            Entry entry = slots[slot];
+            if (entry != null && sameToken(entry.token, chars, length)) {
+                hits.increment();
+                return entry.stem;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(char[] chars, int length, String stem) {
+        char[] token = new char[length];
+        System.arraycopy(chars, 0, token, 0, length);
+        int bucket = hash(chars, length) & mask & ~1;
+        Entry first = slots[bucket];
+        if (first != null && !sameToken(first.token, chars, length)) {
+            slots[bucket + 1] = first; // the older entry moves back, evicting the one there
+        }
+        slots[bucket] = new Entry(token, stem);
+    }
+
+    public void put(String token, String stem) {
+        put(token.toCharArray(), token.length(), stem);
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Entry entry : slots) {
+            if (entry != null) size++;
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double hitRate() {
+        long h = hits.sum();
+        long lookups = h + misses.sum();
+        return lookups == 0 ? 0.0 : (double) h / lookups;
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d stems, %d hits, %d misses (%.1f%% hit rate)",
+                size(), capacity(), getHits(), getMisses(), hitRate() * 100);
+    }
+
+    // --- Persistence (a JSON object token -> stem, written by IndexerMain) ---
+
+    public void save(File file) throws IOException {
+        Map<String, String> stems = new TreeMap<>();
+        for (Entry entry : slots) {
+            if (entry != null) stems.put(new String(entry.token), entry.stem);
+        }
+        new ObjectMapper().writeValue(file, stems);
+    }
+
+    /**
+     * Adds the saved stems to this cache; returns how many were read.
+     */
+    public int load(InputStream in) throws IOException {
+        Map<String, String> stems = new ObjectMapper().readValue(in, new TypeReference<Map<String, String>>() {});
+        for (Map.Entry<String, String> entry : stems.entrySet()) put(entry.getKey(), entry.getValue());
+        return stems.size();
+    }
+
+    /**
+     * Preloads the shared cache from a classpath resource, if it exists. Never fails:
+     * the cache is only an optimization, so a missing or broken file is just logged.
+     */
+    public static void preloadShared(String resourcePath) {
+        try (InputStream in = StemCache.class.getResourceAsStream(resourcePath)) {
+            if (in == null) {
+                System.out.println("Stem cache file not found. Stems will be cached as they are used.");
+                return;
+            }
+            int count = SHARED.load(in);
+            System.out.println("🌱 Stem cache preloaded with " + count + " words.");
+        } catch (IOException e) {
+            System.err.println("Error loading stem cache: " + e.getMessage());
+        }
+    }
+
+    private static int hash(char[] chars, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) h = 31 * h + chars[i];
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean sameToken(char[] token, char[] chars, int length) {
+        if (token.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (token[i] != chars[i]) return false;
+        }
+        return true;
+    }
+}
@@ -1,9 +1,17 @@
 package utils;
 /* Whole Pipeline of text processing.
-1. Tokenization
+1. Tokenization - runs of [a-z0-9'] (anything else separates tokens)
 2. Normalization - lowering
 3. Filtering - stop word Removal
 4. Stemming - root word
+
+All four steps run in one pass over the characters: every token is built in a
+reusable char buffer, looked up in the stop word table and stemmed straight
+from that buffer, so only the terms that are kept become Strings. Stems of
+words seen before come from the shared StemCache instead of the stemmer.
+
+One instance can be shared by any number of threads: the stemmer and the token
+buffer are the only mutable state and every thread gets its own pair.
 */
 
 
@@ -13,40 +21,147 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.Collections;
+import java.util.function.Consumer;
 
 public class TextProcessor {
 
-   private final Set<String> stopWords;
-   private final englishStemmer stemmer = new englishStemmer();
+    private final CharArraySet stopWords;
+    private final StemCache stemCache;
+    private final ThreadLocal<Analyzer> analyzer = ThreadLocal.withInitial(Analyzer::new);
 
-   public TextProcessor(Set<String> stopWords) {
-       this.stopWords = stopWords;
-   }
+    public TextProcessor(Set<String> stopWords) {
+        this(stopWords, StemCache.shared());
+    }
 
-   public List<String> process(String text) {
+    /**
+     * @param stemCache cache to use instead of the shared one, or null to always run the stemmer
+     */
+    public TextProcessor(Set<String> stopWords, StemCache stemCache) {
+        this.stopWords = new CharArraySet(stopWords);
+        this.stemCache = stemCache;
+    }
 
+    public List<String> process(String text) {
         if (text == null || text.isBlank()) {
             return Collections.emptyList(); // Return empty list if text is null or empty
         }
-       String[] rawTokens = text.toLowerCase().split("[^a-zA-Z0-9']+");
-       List<String> tokens = Arrays.asList(rawTokens);
+        List<String> stemmedTokens = new ArrayList<>();
+        forEachTerm(text, stemmedTokens::add);
+        return stemmedTokens;
+    }
+
+    /**
+     * Same terms as {@link #process}, handed to the consumer one by one without building a list.
+     */
+    public void forEachTerm(String text, Consumer<String> consumer) {
+        if (text == null) return;
+        Analyzer state = analyzer.get();
+        char[] buffer = state.buffer;
+        int length = 0;
+        for (int i = 0, n = text.length(); i <= n; i++) {
+            char c = i < n ? normalize(text.charAt(i)) : 0;
+            if (c != 0) {
+                // 1 + 2. Still inside a token: collect it lower-cased
+                if (length == buffer.length) buffer = state.buffer = Arrays.copyOf(buffer, length * 2);
+                buffer[length++] = c;
+                continue;
+            }
+            if (length == 0) continue;
+
+            // 3. Token complete: drop stop words without ever turning them into Strings
+            if (!stopWords.contains(buffer, length)) {
+                // 4. Stem from the buffer (unless the cache knows the word already);
+                //    the stemmed term is the only String created
+                String stem = stemCache == null ? null : stemCache.get(buffer, length);
+                if (stem == null) {
+                    state.stemmer.setCurrent(buffer, length);
+                    state.stemmer.stem();
+                    stem = state.stemmer.current();
+                    if (stemCache != null) stemCache.put(buffer, length, stem);
+                }
+                consumer.accept(stem);
+            }
+            length = 0;
+        }
+    }
+
+    // The lower-case token character for c, or 0 if c separates tokens
+    private static char normalize(char c) {
+        if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '\'') return c;
+        if (c >= 'A' && c <= 'Z') return (char) (c + ('a' - 'A'));
+        if (c < 128) return 0;
+        // a few non-ASCII letters lower-case into ASCII ones (e.g. the Kelvin sign into 'k')
+        char lower = Character.toLowerCase(c);
+        return lower >= 'a' && lower <= 'z' ? lower : 0;
+    }
+
+    // Per-thread working state: Snowball stemmers are not thread-safe
+    private static final class Analyzer {
+        final BufferStemmer stemmer = new BufferStemmer();
+        char[] buffer = new char[32];
+    }
+
+    /**
+     * Snowball stemmer that is filled from a char buffer and read without
+     * getCurrent(), which throws away and reallocates its StringBuffer every time.
+     */
+    private static final class BufferStemmer extends englishStemmer {
+        void setCurrent(char[] chars, int length) {
+            current.setLength(0);
+            current.append(chars, 0, length);
+            cursor = 0;
+            limit = length;
+            limit_backward = 0;
+            bra = cursor;
+            ket = limit;
+        }
+
+        String current() {
+            return current.toString();
+        }
+    }
+
+    /**
+     * Open-addressing hash set of strings that can be probed with a slice of a char
+     * array, so a token can be checked before (or without) becoming a String.
+     */
+    private static final class CharArraySet {
+        private final char[][] slots;
+        private final int mask;
 
-       List<String> filteredTokens = new ArrayList<>();
-       for(String token : tokens) {
-           if (token.isEmpty()) continue;
-           if(!stopWords.contains(token)) {
-               filteredTokens.add(token);
-           }
-       }
+        CharArraySet(Set<String> words) {
+            int capacity = Integer.highestOneBit(Math.max(4, words.size() * 2) - 1) << 1;
+            this.slots = new char[capacity][];
+            this.mask = capacity - 1;
+            for (String word : words) {
+                char[] chars = word.toCharArray();
+                int slot = hash(chars, chars.length) & mask;
+                while (slots[slot] != null && !equals(slots[slot], chars, chars.length)) slot = (slot + 1) & mask;
+                slots[slot] = chars;
+            }
+        }
 
-       List<String> stemmedTokens = new ArrayList<>();
-       for (String token : filteredTokens) {
-           stemmer.setCurrent(token);
-           stemmer.stem();
-           stemmedTokens.add(stemmer.getCurrent());
-       }
+        boolean contains(char[] chars, int length) {
+            int slot = hash(chars, length) & mask;
+            while (slots[slot] != null) {
+                if (equals(slots[slot], chars, length)) return true;
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
 
-       return stemmedTokens;
-   }
+        private static int hash(char[] chars, int length) {
+            int h = 0;
+            for (int i = 0; i < length; i++) h = 31 * h + chars[i];
+            return h ^ (h >>> 16);
+        }
 
+        private static boolean equals(char[] word, char[] chars, int length) {
+            if (word.length != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (word[i] != chars[i]) return false;
+            }
+            return true;
+        }
+    }
 }
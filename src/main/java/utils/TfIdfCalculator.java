@@ -1,62 +1,138 @@
 package utils;
 
-import domain.Posting;
+import domain.DocVector;
+import domain.PostingList;
+import domain.TermDictionary;
 import lombok.Getter;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
 
 public class TfIdfCalculator {
 
     @Getter
-    private Map<Integer, Map<String, Double>> tfIdfVectors = new HashMap<>();
-    // This Map store final Tf-Idf of every term that exist in every document
+    private TermDictionary dictionary;
+    // every term of the index with its dense int id
 
     @Getter
-    private Map<String, Double> idfScores = new HashMap<>();
-    // store Idf store for every term
+    private Map<Integer, DocVector> docVectors = new HashMap<>();
+    // This Map store final Tf-Idf of every term that exist in every document, as term ids + weights
 
-    public void calculateIdf(Map<String, List<Posting>> invertedIndex, int totalDocCount) {
+    @Getter
+    private double[] idfScores;
+    // store Idf for every term, indexed by term id
+
+    public void calculateIdf(Map<String, PostingList> invertedIndex, int totalDocCount) {
         System.out.println("Calculating IDF scores for + " + invertedIndex.size() + " terms...");
 
-        for(String term : invertedIndex.keySet()) {
-            int docFrequency = invertedIndex.get(term).size();
-            // number of documents in which this term appeared.
+        // number of documents in which the term appeared = size of its posting list
+        calculateIdf(invertedIndex, term -> Math.log10( (double) totalDocCount / invertedIndex.get(term).size() ));
+    }
+
+    /**
+     * Builds the dictionary and takes every term's IDF from the given function,
+     * e.g. live collection statistics when a delta segment is indexed.
+     */
+    public void calculateIdf(Map<String, PostingList> invertedIndex, ToDoubleFunction<String> idfOfTerm) {
+        dictionary = TermDictionary.of(invertedIndex.keySet());
+        idfScores = new double[dictionary.size()];
+        for (int termId = 0; termId < idfScores.length; termId++) {
+            idfScores[termId] = idfOfTerm.applyAsDouble(dictionary.term(termId));
+        }
+    }
 
-            double idf = Math.log10( (double) totalDocCount / docFrequency );
 
-            idfScores.put(term, idf);
-            // populating the idfScores Map with term and their idf's
+    public void calculateTfIdf(Map<String, PostingList> invertedIndex) {
 
+        System.out.println("Calculating TF-IDF vectors for all documents... ");
+
+        float[][] weights = new float[dictionary.size()][];
+        for (int termId = 0; termId < weights.length; termId++) {
+            weights[termId] = termWeights(invertedIndex.get(dictionary.term(termId)), idfScores[termId]);
         }
+        docVectors = toDocVectors(invertedIndex, weights);
+        System.out.println("TF-IDF calculation complete. ");
+
     }
 
 
-    public void calculateTfIdf(Map<String, List<Posting>> invertedIndex) {
+    // --- Parallel variants used by the offline indexer ---
+    // Same formulas as above; parallel streams submitted to the given pool run on its workers.
 
-        System.out.println("Calculating TF-IDF vectors for all documents... ");
+    public void calculateIdfParallel(Map<String, PostingList> invertedIndex, int totalDocCount, ForkJoinPool pool) {
+        System.out.println("Calculating IDF scores in parallel for " + invertedIndex.size() + " terms...");
 
-        for(String term : invertedIndex.keySet()) {
+        dictionary = TermDictionary.of(invertedIndex.keySet());
+        double[] scores = new double[dictionary.size()];
+        pool.submit(() -> IntStream.range(0, scores.length).parallel().forEach(termId -> {
+            int docFrequency = invertedIndex.get(dictionary.term(termId)).size();
+            scores[termId] = Math.log10( (double) totalDocCount / docFrequency );
+        })).join();
 
-            double idf = idfScores.get(term);
-            List<Posting> postings = invertedIndex.get(term);
+        idfScores = scores;
+    }
 
-            for(Posting posting : postings ) {
+    public void calculateTfIdfParallel(Map<String, PostingList> invertedIndex, ForkJoinPool pool) {
+        System.out.println("Calculating TF-IDF vectors in parallel for all documents... ");
 
-                int docId = posting.getDocId();
-                int termFreq = posting.getFreq();
+        // Weighing is independent per term; only the cheap regrouping by document stays sequential
+        float[][] weights = new float[dictionary.size()][];
+        pool.submit(() -> IntStream.range(0, weights.length).parallel().forEach(termId ->
+                weights[termId] = termWeights(invertedIndex.get(dictionary.term(termId)), idfScores[termId])
+        )).join();
+
+        docVectors = toDocVectors(invertedIndex, weights);
+        System.out.println("TF-IDF calculation complete. ");
+    }
 
-                double tf = 1 + Math.log10(termFreq);
-                double tfIdf = tf * idf;
 
-                Map<String, Double> docVector = tfIdfVectors.computeIfAbsent(docId, k -> new HashMap<>());
+    // tf-idf of every posting of one term, in posting order
+    private static float[] termWeights(PostingList postings, double idf) {
+        float[] weights = new float[postings.size()];
+        for (int i = 0; i < weights.length; i++) {
+            double tf = 1 + Math.log10(postings.freq(i));
+            weights[i] = (float) (tf * idf);
+        }
+        return weights;
+    }
 
-                docVector.put(term,tfIdf);
+    // Regroups per-term weights by document. Terms are visited in id order, so every
+    // vector comes out sorted by term id without a sort.
+    private Map<Integer, DocVector> toDocVectors(Map<String, PostingList> invertedIndex, float[][] weights) {
+        Map<Integer, VectorBuilder> builders = new HashMap<>();
+        for (int termId = 0; termId < weights.length; termId++) {
+            PostingList postings = invertedIndex.get(dictionary.term(termId));
+            for (int i = 0; i < postings.size(); i++) {
+                builders.computeIfAbsent(postings.docId(i), k -> new VectorBuilder()).add(termId, weights[termId][i]);
             }
         }
-        System.out.println("TF-IDF calculation complete. ");
 
+        Map<Integer, DocVector> vectors = new HashMap<>(builders.size() * 2);
+        builders.forEach((docId, builder) -> vectors.put(docId, builder.build()));
+        return vectors;
+    }
+
+    private static final class VectorBuilder {
+        int[] termIds = new int[16];
+        float[] weights = new float[16];
+        int size;
+
+        void add(int termId, float weight) {
+            if (size == termIds.length) {
+                termIds = Arrays.copyOf(termIds, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            termIds[size] = termId;
+            weights[size++] = weight;
+        }
+
+        DocVector build() {
+            return new DocVector(Arrays.copyOf(termIds, size), Arrays.copyOf(weights, size));
+        }
     }
 
 }
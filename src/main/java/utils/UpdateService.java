@@ -1,73 +1,328 @@
 package utils;
 
-import utils.StorageUtils;
-import java.io.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import domain.Book;
+import domain.CatalogDelta;
+import domain.UpdateManifest;
+import domain.UpdateManifest.DeltaEntry;
+import domain.UpdateManifest.FileEntry;
+import features.search.SegmentedIndex;
+import storage.BookLoader;
+import storage.IndexLoader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
+/**
+ * Keeps the catalog and index in AppData up to date with the update server.
+ *
+ * The server publishes a manifest.json (see {@link UpdateManifest}) with the size and
+ * SHA-256 of every data file and, optionally, book-level deltas between versions.
+ *   1. If a chain of deltas leads from the installed version to the new one, only those
+ *      are downloaded and applied: the books to book.json, the index as a delta segment.
+ *   2. Otherwise only the files whose hash differs from the installed ones are fetched.
+ * Downloads run in parallel, are gzip-compressed on the wire, land in a .part file that
+ * is checked against the manifest and then renamed over the old file in one step (except
+ * the index, which the live engine keeps mapped: a new one is installed under its own name,
+ * see {@link IndexLoader#installedFileName}). An interrupted download is resumed from where
+ * it stopped on the next check.
+ *
+ * The server can be changed with -Ddevshelf.updateUrl=...; core.UpdateCheckMain runs this
+ * class against a local stub server.
+ */
 public class UpdateService {
 
-    // 🔴 REPLACE THIS with your GitHub Raw URL
-    private static final String BASE_URL = "https://raw.githubusercontent.com/Kas-sim/DevShelf-Data/refs/heads/main/book.json";
+    private static final String DEFAULT_BASE_URL = "https://raw.githubusercontent.com/Kas-sim/DevShelf-Data/refs/heads/main/";
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String DOWNLOAD_DIR = "updates";
+    private static final String SEGMENTS_DIR = "segments";
+    private static final String PART_SUFFIX = ".part";
 
-    private static final String[] FILES = {"book.json", "index_data.json", "version.txt"};
+    private static final String BOOK_RES = "/data/book.json";
+    private static final String INDEX_RES = "/data/index_data.bin";
+    private static final String STOPWORD_RES = "/data/stopword.txt";
+    private static final String DATA_RES_DIR = "/data/";
 
-    public void checkForUpdates() {
-        System.out.println("☁️ Checking for book updates...");
+    private static final int DOWNLOAD_THREADS = 4;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final String baseUrl;
+    private final File dataDir;
+    private final HttpClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public UpdateService() {
+        this(System.getProperty("devshelf.updateUrl", DEFAULT_BASE_URL));
+    }
+
+    /**
+     * @param baseUrl the directory on the server that holds manifest.json
+     */
+    public UpdateService(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.dataDir = new File(StorageUtils.getAppDataDir());
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
 
-        String appData = StorageUtils.getAppDataDir();
-        HttpClient client = HttpClient.newHttpClient();
+    /**
+     * Brings the local data up to the server's version.
+     * @return true if anything changed on disk, i.e. the engine should be reloaded
+     */
+    public boolean checkForUpdates() {
+        System.out.println("☁️ Checking for book updates...");
 
         try {
-            // 1. Check Remote Version
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(BASE_URL + "version.txt"))
-                    .build();
-
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            String remoteVersion = response.body().trim();
-
-            // 2. Check Local Version
-            File localVersionFile = new File(appData, "version.txt");
-            String localVersion = "0.0";
-            if (localVersionFile.exists()) {
-                localVersion = Files.readString(localVersionFile.toPath()).trim();
+            // 1. Compare the server's manifest with the installed one
+            UpdateManifest remote = mapper.readValue(fetch(MANIFEST_FILE), UpdateManifest.class);
+            UpdateManifest installed = loadInstalledManifest();
+            if (installed != null && remote.getVersion().equals(installed.getVersion())) {
+                System.out.println("✅ Books are up to date (v" + installed.getVersion() + ").");
+                return false;
             }
+            System.out.println("🔄 New content found! Updating to v" + remote.getVersion());
 
-            // 3. Compare
-            if (!remoteVersion.equals(localVersion)) {
-                System.out.println("🔄 New content found! Updating to v" + remoteVersion);
-                downloadFiles(client, appData);
-            } else {
-                System.out.println("✅ Books are up to date.");
+            // 2. A few books changed: apply the deltas instead of downloading everything
+            List<DeltaEntry> chain = installed == null ? null : remote.deltaChain(installed.getVersion());
+            boolean applied = false;
+            if (chain != null && !chain.isEmpty()) {
+                try {
+                    applyDeltas(chain);
+                    applied = true;
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("⚠️ Delta update failed, downloading full files instead: " + e.getMessage());
+                }
+            }
+
+            // 3. Otherwise fetch whatever files differ
+            boolean changedOnDisk = applied;
+            if (!applied) {
+                List<FileEntry> changed = changedFiles(remote, installed);
+                List<File> downloaded = downloadAll(changed);
+                for (int i = 0; i < changed.size(); i++) {
+                    String name = changed.get(i).getName();
+                    // The live engine maps the current index, so a new one goes next to it (see IndexLoader)
+                    if (IndexLoader.INDEX_FILE_NAME.equals(name)) {
+                        name = IndexLoader.installedFileName(remote.getVersion());
+                        remote.setIndexFile(name);
+                    }
+                    File target = new File(dataDir, name);
+                    Files.move(downloaded.get(i).toPath(), target.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    System.out.println("📥 Installed: " + name);
+                }
+                changedOnDisk = !changed.isEmpty();
+                // A new full index already contains every earlier delta; with the old one they are still needed
+                if (changed.stream().anyMatch(entry -> IndexLoader.INDEX_FILE_NAME.equals(entry.getName()))) {
+                    SegmentedIndex.discardSegments(new File(dataDir, SEGMENTS_DIR));
+                }
             }
 
+            // 4. Only now record the new version, so a failed update is simply retried next time
+            if (remote.getIndexFile() == null && installed != null) remote.setIndexFile(installed.getIndexFile());
+            saveInstalledManifest(remote);
+            deleteLeftoverDownloads();
+            System.out.println("✅ Updated to v" + remote.getVersion());
+            return changedOnDisk;
+
         } catch (Exception e) {
             System.err.println("⚠️ Update check failed (User might be offline): " + e.getMessage());
             // It's okay, just use local files
+            return false;
+        }
+    }
+
+    // --- Full files ---
+
+    // Files whose content differs from what is installed (or, before the first update, from the bundled copy)
+    private List<FileEntry> changedFiles(UpdateManifest remote, UpdateManifest installed) throws IOException {
+        List<FileEntry> changed = new ArrayList<>();
+        for (FileEntry entry : remote.getFiles()) {
+            FileEntry local = installed == null ? null : installed.file(entry.getName());
+            String localHash = local != null ? local.getSha256() : currentHash(entry.getName());
+            if (!entry.getSha256().equals(localHash)) changed.add(entry);
+        }
+        System.out.println("📦 " + changed.size() + " of " + remote.getFiles().size() + " file(s) changed.");
+        return changed;
+    }
+
+    private String currentHash(String name) throws IOException {
+        File file = new File(dataDir, name);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                return UpdateManifest.sha256(in);
+            }
+        }
+        try (InputStream in = getClass().getResourceAsStream(DATA_RES_DIR + name)) {
+            return in == null ? null : UpdateManifest.sha256(in);
         }
     }
 
-    private void downloadFiles(HttpClient client, String appDataPath) {
-        for (String fileName : FILES) {
-            try {
-                HttpRequest req = HttpRequest.newBuilder()
-                        .uri(URI.create(BASE_URL + fileName))
-                        .build();
+    // --- Deltas ---
+
+    private void applyDeltas(List<DeltaEntry> chain) throws IOException {
+        List<File> files = downloadAll(new ArrayList<>(chain));
+        List<CatalogDelta> deltas = new ArrayList<>();
+        for (File file : files) deltas.add(mapper.readValue(file, CatalogDelta.class));
+
+        // 1. Index: one delta segment per step, on top of the installed base
+        TextProcessor textProcessor = new TextProcessor(StopWordLoader.loadStopWords(STOPWORD_RES));
+        try (SegmentedIndex index = SegmentedIndex.open(new IndexLoader(INDEX_RES).loadIndex(),
+                new File(dataDir, SEGMENTS_DIR), textProcessor)) {
+            for (CatalogDelta delta : deltas) index.apply(delta);
+        }
+
+        // 2. Catalog
+        BookLoader bookLoader = new BookLoader(BOOK_RES);
+        List<Book> books = bookLoader.loadBooks();
+        for (CatalogDelta delta : deltas) books = delta.applyTo(books);
+        bookLoader.saveBooks(books);
+
+        for (File file : files) Files.deleteIfExists(file.toPath());
+        System.out.println("🧩 Applied " + deltas.size() + " catalog delta(s).");
+    }
+
+    // --- Downloads ---
 
-                Path target = Path.of(appDataPath, fileName);
+    /**
+     * Downloads the entries in parallel; returns their verified files in the same order.
+     */
+    private List<File> downloadAll(List<? extends FileEntry> entries) throws IOException {
+        if (entries.isEmpty()) return new ArrayList<>();
+        File downloadDir = new File(dataDir, DOWNLOAD_DIR);
+        downloadDir.mkdirs();
 
-                client.send(req, HttpResponse.BodyHandlers.ofFile(target));
-                System.out.println("📥 Downloaded: " + fileName);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(DOWNLOAD_THREADS, entries.size()));
+        try {
+            List<Callable<File>> tasks = new ArrayList<>();
+            for (FileEntry entry : entries) tasks.add(() -> download(entry, downloadDir));
+
+            List<File> files = new ArrayList<>();
+            for (Future<File> future : pool.invokeAll(tasks)) files.add(future.get());
+            return files;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-            } catch (Exception e) {
-                e.printStackTrace();
+    /**
+     * Downloads one entry into a .part file named after its hash (so a partial download of
+     * another version is never continued), resuming a previous attempt with a Range request.
+     */
+    private File download(FileEntry entry, File downloadDir) throws IOException, InterruptedException {
+        String partName = entry.getName().replace('/', '_') + "." + entry.getSha256().substring(0, 16) + PART_SUFFIX;
+        File part = new File(downloadDir, partName);
+        long have = part.exists() ? part.length() : 0;
+        if (have > entry.getSize()) {
+            Files.delete(part.toPath());
+            have = 0;
+        }
+
+        if (have < entry.getSize()) {
+            HttpRequest.Builder request = request(entry.getName());
+            if (have > 0) {
+                // The .part file holds decoded bytes, so a resumed range is requested uncompressed
+                request.header("Range", "bytes=" + have + "-");
+            } else {
+                request.header("Accept-Encoding", "gzip");
             }
+            HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            boolean resumed = response.statusCode() == 206;
+            if (!resumed && response.statusCode() != 200) {
+                response.body().close();
+                throw new IOException(entry.getName() + ": HTTP " + response.statusCode());
+            }
+            try (InputStream in = body(response); OutputStream out = new FileOutputStream(part, resumed)) {
+                in.transferTo(out);
+            }
+            System.out.println("📥 Downloaded: " + entry.getName()
+                    + (resumed ? " (resumed at " + have + " bytes)" : "") + ".");
+        }
+
+        // Never install anything that does not match the manifest
+        String hash;
+        try (InputStream in = new FileInputStream(part)) {
+            hash = UpdateManifest.sha256(in);
+        }
+        if (part.length() != entry.getSize() || !hash.equals(entry.getSha256())) {
+            Files.deleteIfExists(part.toPath());
+            throw new IOException(entry.getName() + ": checksum mismatch, discarded the download");
+        }
+        return part;
+    }
+
+    // A small file fetched into memory (gzip-compressed on the wire when the server supports it)
+    private byte[] fetch(String name) throws IOException, InterruptedException {
+        HttpRequest request = request(name).header("Accept-Encoding", "gzip").build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream in = body(response)) {
+            if (response.statusCode() != 200) throw new IOException(name + ": HTTP " + response.statusCode());
+            return in.readAllBytes();
+        }
+    }
+
+    private HttpRequest.Builder request(String name) {
+        return HttpRequest.newBuilder().uri(URI.create(baseUrl + name)).timeout(TIMEOUT);
+    }
+
+    // The response body, decompressed if the server gzipped it
+    private static InputStream body(HttpResponse<InputStream> response) throws IOException {
+        boolean gzipped = response.headers().firstValue("Content-Encoding")
+                .map(value -> value.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        return gzipped ? new GZIPInputStream(response.body()) : response.body();
+    }
+
+    // --- Installed version ---
+
+    private UpdateManifest loadInstalledManifest() {
+        File file = new File(dataDir, MANIFEST_FILE);
+        if (!file.exists()) return null;
+        try {
+            return mapper.readValue(file, UpdateManifest.class);
+        } catch (IOException e) {
+            return null; // treated like a first update: files are compared by their actual hashes
         }
     }
-}
\ No newline at end of file
+
+    // Partial downloads of versions that were skipped or superseded
+    private void deleteLeftoverDownloads() {
+        File[] parts = new File(dataDir, DOWNLOAD_DIR).listFiles((dir, name) -> name.endsWith(PART_SUFFIX));
+        if (parts == null) return;
+        for (File part : parts) part.delete();
+    }
+
+    private void saveInstalledManifest(UpdateManifest manifest) throws IOException {
+        File file = new File(dataDir, MANIFEST_FILE);
+        File tmp = new File(dataDir, MANIFEST_FILE + ".tmp");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(tmp, manifest);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}